@@ -0,0 +1,225 @@
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how many operations of each class run at once in the service
+ * modes, so a burst of one class cannot take every database connection
+ * from the others.  The classes are
+ *
+ *    bookings  bookRoom and bookStay
+ *    writes    the other operations that add rows
+ *    queries   the lookups of the front desk (8, 9, 17 and 18)
+ *    reports   the date range and top k reports (10 to 16)
+ *
+ * An operation that finds its class at the limit waits in the class's
+ * queue, in arrival order, for at most maxWait milliseconds.  When
+ * the queue is full or the wait runs out it is rejected at once with
+ * {@link Rejected} instead of piling up behind the pool.
+ *
+ * Bookings may use the whole pool.  The other classes each have their own
+ * limit and together hold at most the pool less a quarter of it (at least
+ * one connection), so bookings always find that many connections free of
+ * other work; only a pool of one connection has nothing to reserve.  A class
+ * is configured with -Ddbproject.admission.&lt;class&gt;=&lt;limit&gt;[/&lt;queue&gt;];
+ * the common cap of the other classes stays.
+ */
+public class AdmissionControl {
+
+   public static final String BOOKINGS = "bookings";
+   public static final String WRITES = "writes";
+   public static final String QUERIES = "queries";
+   public static final String REPORTS = "reports";
+
+   // longest wait in a queue before the operation is rejected
+   private static final long MAX_WAIT = Long.getLong ("dbproject.admission.maxWait", 1000L);
+
+   /**
+    * The operation was not run because its class is overloaded.  The
+    * SQLState is 53000 (insufficient resources).
+    */
+   public static class Rejected extends SQLException {
+      private static final long serialVersionUID = 1L;
+
+      Rejected (String message) {
+         super (message, "53000");
+      }
+   }//end Rejected
+
+   /**
+    * The limit, queue and counters of one class.
+    */
+   static class Lane {
+      final String name;
+      final int limit;
+      final int queue;
+      final Semaphore permits;
+      // the slots the non-booking classes share, null for bookings
+      final Semaphore shared;
+      final AtomicInteger queued = new AtomicInteger ();
+      final AtomicInteger peakQueued = new AtomicInteger ();
+      final AtomicLong admitted = new AtomicLong ();
+      final AtomicLong queueFull = new AtomicLong ();
+      final AtomicLong timedOut = new AtomicLong ();
+      final LatencyHistogram wait = new LatencyHistogram ();
+
+      Lane (String name, int limit, int queue, Semaphore shared) {
+         this.name = name;
+         this.limit = limit;
+         this.queue = queue;
+         this.permits = new Semaphore (limit, true);
+         this.shared = shared;
+      }
+
+      int running () {
+         return limit - permits.availablePermits ();
+      }
+
+      /*
+       * Takes a slot of the class and, for the non-booking classes, one of
+       * the shared slots, waiting at most timeout nanoseconds for both.
+       * The fast path (timeout 0) does not queue behind waiting callers.
+       */
+      boolean acquire (long timeout) throws InterruptedException {
+         long deadline = System.nanoTime () + timeout;
+         if (!(timeout == 0 ? permits.tryAcquire () : permits.tryAcquire (timeout, TimeUnit.NANOSECONDS)))
+            return false;
+         if (shared == null)
+            return true;
+         long left = deadline - System.nanoTime ();
+         if (timeout == 0 || left <= 0 ? shared.tryAcquire () : shared.tryAcquire (left, TimeUnit.NANOSECONDS))
+            return true;
+         permits.release ();
+         return false;
+      }
+
+      void release () {
+         if (shared != null)
+            shared.release ();
+         permits.release ();
+      }
+   }//end Lane
+
+   private final Map<String, Lane> _lanes = new LinkedHashMap<String, Lane> ();
+   // connections the non-booking classes may hold together
+   private final int _shared;
+   private final Semaphore _sharedPermits;
+
+   /**
+    * @param poolSize the largest number of connections the pool opens
+    */
+   public AdmissionControl (int poolSize) {
+      int reserved = poolSize > 1 ? Math.max (1, poolSize / 4) : 0;
+      _shared = poolSize - reserved;
+      _sharedPermits = new Semaphore (_shared, true);
+      // below three shared connections a class's own limit may exceed its
+      // share; the common cap keeps their sum within _shared
+      int reports = Math.max (1, _shared / 3);
+      int writes = Math.max (1, _shared / 3);
+      int queries = Math.max (1, _shared - reports - writes);
+      add (BOOKINGS, poolSize, 1000, null);
+      add (WRITES, writes, 200, _sharedPermits);
+      add (QUERIES, queries, 200, _sharedPermits);
+      add (REPORTS, reports, 20, _sharedPermits);
+   }//end AdmissionControl
+
+   private void add (String name, int limit, int queue, Semaphore shared) {
+      String setting = System.getProperty ("dbproject.admission." + name);
+      if (setting != null) {
+         String[] parts = setting.split ("/");
+         limit = Integer.parseInt (parts[0].trim ());
+         if (parts.length > 1)
+            queue = Integer.parseInt (parts[1].trim ());
+      }
+      if (limit < 1 || queue < 0)
+         throw new IllegalArgumentException ("Invalid admission limit for " + name + ": " + setting);
+      _lanes.put (name, new Lane (name, limit, queue, shared));
+   }//end add
+
+   /**
+    * Waits for a slot in a class.  Every successful call must be paired
+    * with {@link #exit(String)}.
+    *
+    * @param name the class, e.g. AdmissionControl.REPORTS
+    * @throws AdmissionControl.Rejected when the class's queue is full or no
+    *         slot became free within maxWait
+    */
+   public void enter (String name) throws Rejected {
+      Lane lane = _lanes.get (name);
+      boolean acquired;
+      try {
+         acquired = lane.acquire (0L);
+      }catch (InterruptedException e) {
+         // a zero wait is never interrupted
+         acquired = false;
+      }
+      if (acquired) {
+         lane.admitted.incrementAndGet ();
+         lane.wait.record (0);
+         return;
+      }
+      int depth = lane.queued.incrementAndGet ();
+      try {
+         if (depth > lane.queue) {
+            lane.queueFull.incrementAndGet ();
+            throw new Rejected ("Too many " + name + " waiting (" + lane.queue + "), try again later");
+         }
+         int peak = lane.peakQueued.get ();
+         while (depth > peak && !lane.peakQueued.compareAndSet (peak, depth))
+            peak = lane.peakQueued.get ();
+         long start = System.nanoTime ();
+         try {
+            acquired = lane.acquire (TimeUnit.MILLISECONDS.toNanos (MAX_WAIT));
+         }catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            acquired = false;
+         }
+         if (!acquired) {
+            lane.timedOut.incrementAndGet ();
+            throw new Rejected ("No " + name + " slot free within " + MAX_WAIT + " ms, try again later");
+         }
+         lane.admitted.incrementAndGet ();
+         lane.wait.record (System.nanoTime () - start);
+      }finally {
+         lane.queued.decrementAndGet ();
+      }
+   }//end enter
+
+   /**
+    * Frees the slot taken by {@link #enter(String)}.
+    */
+   public void exit (String name) {
+      _lanes.get (name).release ();
+   }//end exit
+
+   /**
+    * @return the classes in the order above
+    */
+   Iterable<Lane> lanes () {
+      return _lanes.values ();
+   }//end lanes
+
+   /**
+    * @return one line per class with its limit, running and queued
+    *         operations, rejections and queue wait percentiles
+    */
+   public String summary () {
+      StringBuilder sb = new StringBuilder ();
+      sb.append (String.format ("%-10s %6s %8s %7s %6s %11s %9s %10s %9s %9s%n",
+         "class", "limit", "running", "queued", "peak", "admitted", "full", "timed out", "wait p50", "wait p99"));
+      for (Lane l : _lanes.values ()) {
+         sb.append (String.format ("%-10s %6d %8d %7d %6d %11d %9d %10d %9.3f %9.3f%n",
+            l.name, l.limit, l.running (), l.queued.get (), l.peakQueued.get (), l.admitted.get (),
+            l.queueFull.get (), l.timedOut.get (),
+            LatencyHistogram.millis (l.wait.getPercentile (50)), LatencyHistogram.millis (l.wait.getPercentile (99))));
+      }
+      sb.append ("Writes, queries and reports share at most " + _shared + " connections ("
+                 + _sharedPermits.availablePermits () + " free); queues wait at most " + MAX_WAIT + " ms (wait in ms)");
+      return sb.toString ();
+   }//end summary
+
+}//end AdmissionControl
@@ -0,0 +1,262 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs queries and updates on an executor instead of the calling thread,
+ * so a caller can start several independent statements and wait for all
+ * of them: the statements run at the same time on different pooled
+ * connections and the caller waits as long as the slowest one.
+ *
+ * Each call returns a {@link Future} of typed values (see
+ * {@link DBProject.RowMapper}); {@link #awaitAll(long, Future...)} waits
+ * for a group of them and {@link #get(Future)} takes a value out, with the
+ * statement's SQLException as it was thrown.  Nothing is printed.
+ *
+ * By default the work runs on -Ddbproject.async.threads daemon threads
+ * (default the pool's maximum size, as more threads would only wait for a
+ * connection); any ExecutorService may be given instead.
+ */
+public class AsyncQueries {
+
+   private static final AtomicInteger THREADS = new AtomicInteger ();
+
+   /**
+    * Reads the first column as an int, e.g. for a COUNT(*).
+    */
+   public static final DBProject.RowMapper<Integer> INT = new DBProject.RowMapper<Integer> () {
+      public Integer map (ResultSet rs) throws SQLException {
+         return rs.getInt (1);
+      }
+   };
+
+   private final DBProject _esql;
+   private final ExecutorService _executor;
+   private final boolean _ownExecutor;
+
+   /**
+    * Runs the work on its own threads, stopped by {@link #shutdown()}.
+    */
+   public AsyncQueries (DBProject esql) {
+      this (esql, Executors.newFixedThreadPool (Integer.getInteger ("dbproject.async.threads", esql.getPoolMaxSize ()),
+                                                new ThreadFactory () {
+         public Thread newThread (Runnable r) {
+            Thread t = new Thread (r, "async-" + THREADS.incrementAndGet ());
+            t.setDaemon (true);
+            return t;
+         }
+      }), true);
+   }//end AsyncQueries
+
+   /**
+    * Runs the work on the caller's executor, which {@link #shutdown()}
+    * leaves running.
+    */
+   public AsyncQueries (DBProject esql, ExecutorService executor) {
+      this (esql, executor, false);
+   }//end AsyncQueries
+
+   private AsyncQueries (DBProject esql, ExecutorService executor, boolean ownExecutor) {
+      this._esql = esql;
+      this._executor = executor;
+      this._ownExecutor = ownExecutor;
+   }//end AsyncQueries
+
+   /**
+    * Starts a query.
+    *
+    * @param mapper turns each row into a value
+    * @param sql the query string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the values of the rows, in order
+    */
+   public <T> Future<List<T>> query (final DBProject.RowMapper<T> mapper, final String sql, final Object... params) {
+      return _executor.submit (new Callable<List<T>> () {
+         public List<T> call () throws SQLException {
+            return _esql.query (mapper, sql, params);
+         }
+      });
+   }//end query
+
+   /**
+    * Starts a query that returns one row, e.g. a count.
+    *
+    * @return the value of the first row, null when there is no row
+    */
+   public <T> Future<T> queryOne (final DBProject.RowMapper<T> mapper, final String sql, final Object... params) {
+      return _executor.submit (new Callable<T> () {
+         public T call () throws SQLException {
+            List<T> rows = _esql.query (mapper, sql, params);
+            return rows.isEmpty () ? null : rows.get (0);
+         }
+      });
+   }//end queryOne
+
+   /**
+    * Starts an INSERT, UPDATE or DELETE.
+    *
+    * @return the number of rows affected
+    */
+   public Future<Integer> update (final String sql, final Object... params) {
+      return _executor.submit (new Callable<Integer> () {
+         public Integer call () throws SQLException {
+            return _esql.executeUpdate (sql, params);
+         }
+      });
+   }//end update
+
+   /**
+    * Waits for every future.  When one fails or the time runs out the
+    * others are cancelled.
+    *
+    * @param timeout the longest wait for all of them, in milliseconds
+    * @throws java.sql.SQLException the first failure, or when the time ran
+    *         out or the wait was interrupted
+    */
+   public static void awaitAll (long timeout, Future<?>... futures) throws SQLException {
+      long deadline = System.nanoTime () + TimeUnit.MILLISECONDS.toNanos (timeout);
+      boolean done = false;
+      try {
+         for (Future<?> f : futures)
+            f.get (Math.max (0L, deadline - System.nanoTime ()), TimeUnit.NANOSECONDS);
+         done = true;
+      }catch (ExecutionException e) {
+         throw failure (e);
+      }catch (TimeoutException e) {
+         throw new SQLException ("Queries did not finish within " + timeout + " ms", "57014");
+      }catch (InterruptedException e) {
+         Thread.currentThread ().interrupt ();
+         throw new SQLException ("Interrupted while waiting for queries", e);
+      }finally {
+         if (!done) {
+            for (Future<?> f : futures)
+               f.cancel (true);
+         }
+      }
+   }//end awaitAll
+
+   /**
+    * Waits for a future and returns its value.
+    *
+    * @throws java.sql.SQLException the statement's failure, or when the
+    *         wait was interrupted
+    */
+   public static <T> T get (Future<T> future) throws SQLException {
+      try {
+         return future.get ();
+      }catch (ExecutionException e) {
+         throw failure (e);
+      }catch (InterruptedException e) {
+         Thread.currentThread ().interrupt ();
+         throw new SQLException ("Interrupted while waiting for a query", e);
+      }
+   }//end get
+
+   private static SQLException failure (ExecutionException e) {
+      Throwable cause = e.getCause ();
+      if (cause instanceof SQLException)
+         return (SQLException) cause;
+      if (cause instanceof RuntimeException)
+         throw (RuntimeException) cause;
+      return new SQLException (String.valueOf (cause), cause);
+   }//end failure
+
+   /**
+    * Stops the threads this instance started.
+    */
+   public void shutdown () {
+      if (_ownExecutor)
+         _executor.shutdown ();
+   }//end shutdown
+
+   /**
+    * A booking price, a row of query 11.
+    */
+   public static class RoomPrice {
+      public final int price;
+      public final int roomNo;
+      public final int hotelID;
+
+      RoomPrice (int price, int roomNo, int hotelID) {
+         this.price = price;
+         this.roomNo = roomNo;
+         this.hotelID = hotelID;
+      }
+
+      static final DBProject.RowMapper<RoomPrice> MAPPER = new DBProject.RowMapper<RoomPrice> () {
+         public RoomPrice map (ResultSet rs) throws SQLException {
+            return new RoomPrice (rs.getInt (1), rs.getInt (2), rs.getInt (3));
+         }
+      };
+   }//end RoomPrice
+
+   /**
+    * The figures of a hotel's front desk: booked and available rooms on a
+    * night (menu 9 and 8) and the hotel's highest booking prices of a date
+    * range (menu 11 for one hotel), read at the same time.
+    */
+   public static class Dashboard {
+      public final int hotelID;
+      public final Date night;
+      public final int booked;
+      public final int available;
+      public final List<RoomPrice> topPrices;
+      // wall time of the three queries together
+      public final long nanos;
+
+      Dashboard (int hotelID, Date night, int booked, int available, List<RoomPrice> topPrices, long nanos) {
+         this.hotelID = hotelID;
+         this.night = night;
+         this.booked = booked;
+         this.available = available;
+         this.topPrices = topPrices;
+         this.nanos = nanos;
+      }
+
+      public String toString () {
+         StringBuilder sb = new StringBuilder ();
+         sb.append ("hotel ").append (hotelID).append (": ").append (booked).append (" rooms booked, ")
+           .append (available).append (" available on ")
+           .append (new SimpleDateFormat ("MM/dd/yyyy").format (night)).append ('\n');
+         sb.append ("top ").append (topPrices.size ()).append (" booking prices of hotel ").append (hotelID).append (":\n");
+         sb.append ("price\troomNo\thotelID\n");
+         for (RoomPrice p : topPrices)
+            sb.append (p.price).append ('\t').append (p.roomNo).append ('\t').append (p.hotelID).append ('\n');
+         sb.append ("(3 queries in ").append (nanos / 1000000).append (" ms)");
+         return sb.toString ();
+      }
+   }//end Dashboard
+
+   /**
+    * Reads a hotel's dashboard, its three queries running at once.
+    *
+    * @param hotelID the hotel
+    * @param night the night the rooms are counted for
+    * @param from the first day of the price range
+    * @param to the last day of the price range
+    * @param k the number of the hotel's highest prices
+    * @param timeout the longest wait in milliseconds
+    */
+   public Dashboard dashboard (int hotelID, Date night, Date from, Date to, int k, long timeout) throws SQLException {
+      long start = System.nanoTime ();
+      Future<Integer> booked = queryOne (INT, DBProject.BOOKED_ROOMS_SQL, night, hotelID);
+      Future<Integer> available = queryOne (INT, DBProject.AVAILABLE_ROOMS_SQL, night, hotelID);
+      Future<List<RoomPrice>> prices = query (RoomPrice.MAPPER, DBProject.HOTEL_TOP_K_ROOM_PRICE_SQL, hotelID, from, to, k);
+      awaitAll (timeout, booked, available, prices);
+      return new Dashboard (hotelID, night, get (booked), get (available), new ArrayList<RoomPrice> (get (prices)),
+                            System.nanoTime () - start);
+   }//end dashboard
+
+}//end AsyncQueries
@@ -0,0 +1,299 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs a file of menu operations (see {@link Operations}) in one process,
+ * one operation per line, either
+ *
+ *    CSV          the operation name or menu number, then its inputs in
+ *                 prompt order, e.g.  addRoom,5,101,Suite
+ *    JSON lines   an object with the operation and its named inputs, e.g.
+ *                 {"operation":"addRoom","hotelID":5,"roomNo":101,"roomType":"Suite"}
+ *
+ * Blank lines and lines starting with # are skipped.
+ *
+ * The operations that add one row (see {@link Operations.Insert}) are
+ * collected and sent in transactions of commitEvery operations; runs of
+ * consecutive lines with the same INSERT go to the server as one JDBC
+ * batch.  Lines keep their order, so a line may use a row added by an
+ * earlier one.  When a transaction fails it is rolled back and its lines
+ * are run again one at a time, so only the lines that fail on their own
+ * are lost; when the transaction cannot be run at all, e.g. the connection
+ * broke, its lines fail.  The other operations end the current transaction
+ * and run on their own, their results written as tab separated rows.
+ *
+ * At the end the line, success, failure, commit and retry counts, the
+ * throughput and the failed lines with their errors are printed.
+ */
+public class BatchRunner {
+
+   // operations per transaction, unless given on the command line
+   static final int COMMIT_EVERY = Integer.getInteger ("dbproject.batch.commitEvery", 500);
+   // failed lines listed in the report, the rest are only counted
+   private static final int MAX_REPORTED = 100;
+
+   /*
+    * One operation of the file and where it came from.
+    */
+   private static class Line {
+      final int number;
+      final String text;
+      final Operations.Insert op;
+      final Object[] params;
+
+      Line (int number, String text, Operations.Insert op, Object[] params) {
+         this.number = number;
+         this.text = text;
+         this.op = op;
+         this.params = params;
+      }
+   }//end Line
+
+   private final DBProject _esql;
+   private final File _file;
+   private final int _commitEvery;
+   private final List<Line> _pending = new ArrayList<Line> ();
+   // failed lines by line number; a failed transaction's lines are retried later
+   private final Map<Integer, String> _failures = new TreeMap<Integer, String> ();
+   private long _operations = 0;
+   private long _failed = 0;
+   private long _commits = 0;
+   // lines of failed transactions run again one at a time
+   private long _retried = 0;
+
+   public BatchRunner (DBProject esql, File file, int commitEvery) {
+      if (commitEvery < 1)
+         throw new IllegalArgumentException ("commitEvery must be at least 1: " + commitEvery);
+      this._esql = esql;
+      this._file = file;
+      this._commitEvery = commitEvery;
+   }//end BatchRunner
+
+   /**
+    * Runs every line of the file and prints the report.
+    *
+    * @return true when no line failed
+    * @throws java.io.IOException when the file cannot be read
+    * @throws java.sql.SQLException when no connection can be opened
+    */
+   public boolean run () throws IOException, SQLException {
+      long start = System.nanoTime ();
+      int lines = 0;
+      BufferedReader in = new BufferedReader (new InputStreamReader (new FileInputStream (_file), "UTF-8"), 1 << 16);
+      try {
+         String text;
+         while ((text = in.readLine ()) != null) {
+            ++lines;
+            String trimmed = text.trim ();
+            if (trimmed.length () == 0 || trimmed.startsWith ("#"))
+               continue;
+            ++_operations;
+            try {
+               runLine (lines, text, trimmed);
+            }catch (RuntimeException e) {
+               // bad inputs are IllegalArgumentExceptions
+               fail (lines, text, message (e));
+            }catch (SQLException e) {
+               fail (lines, text, e.getMessage ());
+            }
+         }//end while
+         flush ();
+      }finally {
+         in.close ();
+         DBProject.out.flush ();
+      }
+      long elapsed = System.nanoTime () - start;
+      System.out.println (String.format ("%s: %d lines, %d operations, %d succeeded, %d failed, %d commits, %d lines retried alone in %d ms (%.0f operations/s)",
+         _file, lines, _operations, _operations - _failed, _failed, _commits, _retried,
+         elapsed / 1000000, _operations / Math.max (elapsed / 1e9, 1e-9)));
+      for (String f : _failures.values ())
+         System.out.println (f);
+      if (_failed > _failures.size ())
+         System.out.println ("  ... and " + (_failed - _failures.size ()) + " more failed lines");
+      return _failed == 0;
+   }//end run
+
+   /*
+    * Parses one line and queues or runs its operation.
+    */
+   private void runLine (int number, String text, String line) throws SQLException, IOException {
+      Operations.Operation op;
+      String[] args;
+      if (line.startsWith ("{")) {
+         Map<String, String> named = new LinkedHashMap<String, String> ();
+         HttpApi.parseObject (line, named);
+         String name = named.remove ("operation");
+         if (name == null)
+            throw new IllegalArgumentException ("No \"operation\" member");
+         op = operation (name);
+         args = op.arguments (named);
+      }else {
+         List<String> fields = splitCsv (line);
+         op = operation (fields.get (0));
+         args = fields.subList (1, fields.size ()).toArray (new String[fields.size () - 1]);
+      }
+
+      if (op instanceof Operations.Insert) {
+         if (args.length < op.required || args.length > op.inputs.length)
+            throw new IllegalArgumentException ("Usage: " + op.usage ());
+         Operations.Insert insert = (Operations.Insert) op;
+         _pending.add (new Line (number, text, insert, insert.params (_esql, args)));
+         if (_pending.size () >= _commitEvery)
+            flush ();
+      }else {
+         flush ();
+         ResultSink sink = ResultSink.create ("tsv", DBProject.out);
+         op.run (_esql, args, sink);
+         sink.end ();
+      }
+   }//end runLine
+
+   private static Operations.Operation operation (String name) {
+      Operations.Operation op = Operations.get (name.trim ());
+      if (op == null)
+         throw new IllegalArgumentException ("Unknown operation " + name);
+      return op;
+   }//end operation
+
+   /*
+    * Sends the queued inserts in one transaction, or one at a time when the
+    * transaction fails.  The queue is empty afterwards whatever happened,
+    * each of its lines either added or counted as failed.
+    */
+   private void flush () {
+      if (_pending.isEmpty ())
+         return;
+      try {
+         if (commitPending ()) {
+            ++_commits;
+         }else {
+            _retried += _pending.size ();
+            for (Line l : _pending)
+               retry (l);
+         }
+      }catch (SQLException e) {
+         failPending (e.getMessage ());
+      }catch (RuntimeException e) {
+         failPending (message (e));
+      }finally {
+         _pending.clear ();
+      }
+   }//end flush
+
+   /*
+    * Runs the queued inserts in one transaction.
+    *
+    * @return false when the transaction failed and was rolled back
+    * @throws java.sql.SQLException when there is no connection or the
+    *         rollback failed
+    */
+   private boolean commitPending () throws SQLException {
+      Connection conn = _esql.borrowConnection ();
+      boolean failed = true;
+      boolean committed = false;
+      try {
+         conn.setAutoCommit (false);
+         try {
+            StatementCache cache = _esql.getStatementCache (conn);
+            PreparedStatement stmt = null;
+            String sql = null;
+            for (Line l : _pending) {
+               if (!l.op.sql.equals (sql)) {
+                  if (stmt != null)
+                     stmt.executeBatch ();
+                  sql = l.op.sql;
+                  stmt = cache.prepare (sql, l.params);
+               }else {
+                  StatementCache.bind (stmt, l.params);
+               }
+               stmt.addBatch ();
+            }
+            stmt.executeBatch ();
+            conn.commit ();
+            committed = true;
+         }catch (SQLException e) {
+            conn.rollback ();
+         }catch (RuntimeException e) {
+            conn.rollback ();
+         }
+         failed = false;
+      }finally {
+         _esql.releaseConnection (conn, failed);
+      }
+      return committed;
+   }//end commitPending
+
+   /*
+    * Runs one insert of a failed transaction on its own.
+    */
+   private void retry (Line l) {
+      try {
+         String[] row = l.op.insert (_esql, l.params);
+         if (DBProject.BookingResult.CONFLICT.name ().equals (row[0]))
+            fail (l.number, l.text, "The room is already booked that night");
+      }catch (SQLException e) {
+         fail (l.number, l.text, e.getMessage ());
+      }catch (RuntimeException e) {
+         fail (l.number, l.text, message (e));
+      }
+   }//end retry
+
+   private void failPending (String message) {
+      for (Line l : _pending)
+         fail (l.number, l.text, message);
+   }//end failPending
+
+   private void fail (int number, String text, String message) {
+      ++_failed;
+      if (_failures.size () < MAX_REPORTED)
+         _failures.put (number, "  line " + number + ": " + String.valueOf (message).replace ('\n', ' ') + "\n    " + text);
+   }//end fail
+
+   private static String message (RuntimeException e) {
+      return e.getMessage () != null ? e.getMessage () : e.toString ();
+   }//end message
+
+   /**
+    * Splits a CSV line.  A field may be quoted to hold commas, with "" for
+    * a quote inside it.
+    */
+   static List<String> splitCsv (String line) {
+      List<String> fields = new ArrayList<String> ();
+      StringBuilder field = new StringBuilder ();
+      boolean quoted = false;
+      for (int i = 0; i < line.length (); ++i) {
+         char c = line.charAt (i);
+         if (quoted) {
+            if (c != '"')
+               field.append (c);
+            else if (i + 1 < line.length () && line.charAt (i + 1) == '"')
+               field.append (line.charAt (++i));
+            else
+               quoted = false;
+         }else if (c == '"') {
+            quoted = true;
+         }else if (c == ',') {
+            fields.add (field.toString ());
+            field.setLength (0);
+         }else {
+            field.append (c);
+         }
+      }
+      if (quoted)
+         throw new IllegalArgumentException ("Unterminated quoted field");
+      fields.add (field.toString ());
+      return fields;
+   }//end splitCsv
+
+}//end BatchRunner
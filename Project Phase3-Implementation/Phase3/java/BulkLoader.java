@@ -0,0 +1,663 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the Phase3 data files (data/*.csv) from the client into the tables
+ * created by sql/create.sql.  The files are in the Postgres COPY text format
+ * with ',' as the delimiter and \N for NULL, the same input the server side
+ * COPY statements in create.sql read.
+ *
+ * Tables are loaded in waves that follow the foreign keys in create.sql.
+ * Tables within one wave do not reference each other and are loaded in
+ * parallel, each on its own pooled connection and in its own transaction.
+ * When the JDBC driver exposes the COPY protocol (org.postgresql.copy, driver
+ * 8.4 and later) the file is streamed with COPY FROM STDIN, otherwise the rows
+ * are sent as batched INSERTs.
+ *
+ * Foreign keys, unique constraints and secondary indexes are not maintained
+ * row by row during the load.  Their definitions are read from the catalog
+ * and they are dropped before the data goes in.  Afterwards the indexes are
+ * rebuilt and the foreign keys re-added as NOT VALID, then validated, both in
+ * parallel.  User triggers are disabled during the load and the tables they
+ * maintain are rebuilt afterwards.  The archive is emptied first.  Every
+ * phase is timed.
+ */
+public class BulkLoader {
+
+   // rows per executeBatch when COPY is not available
+   private static final int BATCH_SIZE = Integer.getInteger ("dbproject.load.batchSize", 1000);
+
+   // connections used at once for loading and rebuilding
+   private static final int THREADS = Integer.getInteger ("dbproject.load.threads", 4);
+
+   // drop constraints and indexes for the load and rebuild them afterwards
+   private static final boolean DEFER_CONSTRAINTS =
+      Boolean.parseBoolean (System.getProperty ("dbproject.load.deferConstraints", "true"));
+
+   // foreign keys and unique constraints on the loaded tables (%s is the
+   // quoted list of table names), with the kind of their table ('p' for
+   // partitioned)
+   static final String CONSTRAINTS_SQL =
+      "SELECT c.conrelid::regclass::text, c.conname, c.contype, pg_get_constraintdef(c.oid), " +
+      "(SELECT t.relkind FROM pg_class t WHERE t.oid = c.conrelid) " +
+      "FROM pg_constraint c WHERE c.contype IN ('f', 'u') AND c.conrelid::regclass::text IN (%s) " +
+      "ORDER BY c.contype DESC, c.conname";
+   // indexes on the loaded tables that do not back a constraint
+   static final String INDEXES_SQL =
+      "SELECT i.indexrelid::regclass::text, pg_get_indexdef(i.indexrelid) " +
+      "FROM pg_index i WHERE NOT i.indisprimary AND i.indrelid::regclass::text IN (%s) " +
+      "AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conindid = i.indexrelid) " +
+      "ORDER BY 1";
+
+   /**
+    * One table of the data set: the file it is loaded from and its columns
+    * with the SQL type each value is cast to.
+    */
+   static class Table {
+      final String name;
+      final String file;
+      final String[] columns;
+      final String[] types;
+
+      Table (String name, String file, String... columnsAndTypes) {
+         this.name = name;
+         this.file = file;
+         this.columns = new String[columnsAndTypes.length / 2];
+         this.types = new String[columns.length];
+         for (int i = 0; i < columns.length; ++i) {
+            columns[i] = columnsAndTypes[2 * i];
+            types[i] = columnsAndTypes[2 * i + 1];
+         }
+      }
+
+      String columnList () {
+         StringBuilder sb = new StringBuilder ();
+         for (int i = 0; i < columns.length; ++i) {
+            if (i > 0)
+               sb.append (", ");
+            sb.append (columns[i]);
+         }
+         return sb.toString ();
+      }
+   }//end Table
+
+   static final Table HOTEL = new Table ("Hotel", "hotel.csv",
+      "hotelID", "numeric", "address", "text", "manager", "numeric");
+   static final Table STAFF = new Table ("Staff", "staff.csv",
+      "SSN", "numeric", "fName", "text", "lName", "text", "address", "text",
+      "role", "StaffRole", "employerID", "numeric");
+   static final Table ROOM = new Table ("Room", "room.csv",
+      "hotelID", "numeric", "roomNo", "numeric", "roomType", "text");
+   static final Table CUSTOMER = new Table ("Customer", "customer.csv",
+      "customerID", "numeric", "fName", "text", "lName", "text", "Address", "text",
+      "phNo", "numeric", "DOB", "date", "gender", "GenderType");
+   static final Table MAINTENANCE_COMPANY = new Table ("MaintenanceCompany", "maintenanceCompany.csv",
+      "cmpID", "numeric", "name", "text", "address", "text", "isCertified", "boolean");
+   static final Table BOOKING = new Table ("Booking", "booking.csv",
+      "bID", "numeric", "customer", "numeric", "hotelID", "numeric", "roomNo", "numeric",
+      "bookingDate", "date", "noOfPeople", "numeric", "price", "numeric");
+   static final Table REPAIR = new Table ("Repair", "repair.csv",
+      "rID", "numeric", "hotelID", "numeric", "roomNo", "numeric", "mCompany", "numeric",
+      "repairDate", "date", "description", "text", "repairType", "text");
+   static final Table REQUEST = new Table ("Request", "request.csv",
+      "reqID", "numeric", "managerID", "numeric", "repairID", "numeric",
+      "requestDate", "date", "description", "text");
+   static final Table ASSIGNED = new Table ("Assigned", "assigned.csv",
+      "asgID", "numeric", "staffID", "numeric", "hotelID", "numeric", "roomNo", "numeric");
+
+   // load order; every table only references tables of earlier waves
+   static final Table[][] WAVES = {
+      { HOTEL },
+      { STAFF },
+      { ROOM, CUSTOMER, MAINTENANCE_COMPANY },
+      { BOOKING, REPAIR, ASSIGNED },
+      { REQUEST }
+   };
+
+   // run after the Staff wave, as create.sql does
+   static final String SET_MANAGERS_SQL =
+      "UPDATE Hotel SET manager = Staff.ssn FROM Staff WHERE Hotel.hotelID = Staff.employerID AND Staff.role = 'Manager'";
+
+   // rebuild the tables kept up to date by triggers on the loaded tables,
+   // which are disabled during the load
+   static final String[] REFRESH_DERIVED_SQL = {
+      "SELECT refresh_repair_rollups()",
+      "SELECT refresh_room_inventory()"
+   };
+
+   // empty the archive (sql/archive.sql) along with the tables
+   static final String[] CLEAR_ARCHIVE_SQL = {
+      "SELECT clear_archive()"
+   };
+
+   private final DBProject _esql;
+   private final File _dataDir;
+
+   public BulkLoader (DBProject esql, File dataDir) {
+      this._esql = esql;
+      this._dataDir = dataDir;
+   }//end BulkLoader
+
+   /**
+    * Replaces the contents of every table with the data files, wave by wave.
+    *
+    * @throws java.sql.SQLException when a table fails to load
+    */
+   public void loadAll () throws SQLException {
+      long start = System.nanoTime ();
+      ExecutorService workers = Executors.newFixedThreadPool (Math.max (1, Math.min (THREADS, _esql.getPoolMaxSize ())));
+      try {
+         List<String[]> constraints = new ArrayList<String[]> ();
+         List<String[]> indexes = new ArrayList<String[]> ();
+         if (DEFER_CONSTRAINTS) {
+            long phase = System.nanoTime ();
+            dropConstraintsAndIndexes (constraints, indexes);
+            report ("drop constraints and indexes", phase);
+         }
+         SQLException failure = null;
+         try {
+            long phase = System.nanoTime ();
+            setUserTriggers (false);
+            callFunctions (CLEAR_ARCHIVE_SQL);
+            truncateAll ();
+            createBookingPartitions ();
+            for (Table[] wave : WAVES) {
+               List<Callable<String>> loads = new ArrayList<Callable<String>> ();
+               for (final Table t : wave) {
+                  loads.add (new Callable<String> () {
+                     public String call () throws Exception {
+                        return load (t);
+                     }
+                  });
+               }
+               runAll (workers, loads);
+               if (wave[0] == STAFF)
+                  _esql.executeUpdate (SET_MANAGERS_SQL, new Object[0]);
+            }//end for
+            resyncSequences ();
+            report ("load data", phase);
+         }catch (SQLException e) {
+            failure = e;
+         }
+         // turn the triggers back on even if the load failed
+         try {
+            setUserTriggers (true);
+            if (failure == null) {
+               long phase = System.nanoTime ();
+               callFunctions (REFRESH_DERIVED_SQL);
+               report ("refresh derived tables", phase);
+            }
+         }catch (SQLException e) {
+            if (failure == null)
+               failure = e;
+         }
+         // put the constraints back even if the load failed
+         try {
+            rebuild (workers, constraints, indexes);
+         }catch (SQLException e) {
+            if (failure == null)
+               failure = e;
+         }
+         if (failure != null)
+            throw failure;
+      }finally {
+         workers.shutdown ();
+      }
+      report ("total", start);
+   }//end loadAll
+
+   /*
+    * Enables or disables the user triggers on the loaded tables, so the load
+    * does not maintain the derived tables row by row.
+    */
+   private void setUserTriggers (boolean enable) throws SQLException {
+      for (String name : tableNames ())
+         _esql.executeUpdate ("ALTER TABLE " + name + (enable ? " ENABLE" : " DISABLE") + " TRIGGER USER");
+   }//end setUserTriggers
+
+   /*
+    * Runs function calls (SELECT f()) one after the other on one connection.
+    */
+   private void callFunctions (String[] calls) throws SQLException {
+      Connection conn = _esql.borrowConnection ();
+      boolean failed = true;
+      try {
+         Statement stmt = conn.createStatement ();
+         try {
+            for (String sql : calls)
+               stmt.executeQuery (sql).close ();
+         }finally {
+            stmt.close ();
+         }
+         failed = false;
+      }finally {
+         _esql.releaseConnection (conn, failed);
+      }
+   }//end callFunctions
+
+   /*
+    * Creates the Booking partitions of every month that has a booking in the
+    * data file and of the coming year (see sql/partitions.sql).
+    */
+   private void createBookingPartitions () throws SQLException {
+      File file = new File (_dataDir, BOOKING.file);
+      int column = Arrays.asList (BOOKING.columns).indexOf ("bookingDate");
+      TreeSet<Date> months = new TreeSet<Date> ();
+      try {
+         BufferedReader in = new BufferedReader (new InputStreamReader (new FileInputStream (file), "UTF-8"), 1 << 16);
+         try {
+            String line;
+            while ((line = in.readLine ()) != null) {
+               String[] fields = line.split (",", column + 2);
+               if (fields.length > column)
+                  months.add (firstOfMonth (fields[column]));
+            }
+         }finally {
+            in.close ();
+         }
+      }catch (IOException e) {
+         throw new SQLException ("Cannot read " + file + ": " + e.getMessage (), e);
+      }catch (ParseException e) {
+         throw new SQLException ("Bad booking date in " + file + ": " + e.getMessage (), e);
+      }
+      int created = 0;
+      for (Date month : months)
+         created += _esql.ensureBookingPartitions (month, month);
+      // and the coming year, as create.sql does
+      Calendar nextYear = Calendar.getInstance ();
+      nextYear.add (Calendar.YEAR, 1);
+      created += _esql.ensureBookingPartitions (new Date (), nextYear.getTime ());
+      System.out.println ("Created " + created + " Booking partitions for " + months.size () + " months");
+   }//end createBookingPartitions
+
+   /*
+    * The first day of the month of a date as the data files write it,
+    * M/d/yyyy (or yyyy-MM-dd).
+    */
+   static Date firstOfMonth (String date) throws ParseException {
+      String[] parts = date.trim ().split ("[/-]");
+      if (parts.length != 3)
+         throw new ParseException (date, 0);
+      boolean iso = parts[0].length () == 4;
+      return new SimpleDateFormat ("yyyy-MM-dd").parse ((iso ? parts[0] : parts[2]) + "-" + (iso ? parts[1] : parts[0]) + "-01");
+   }//end firstOfMonth
+
+   /*
+    * Moves the key sequences past the keys that were just loaded.
+    */
+   private void resyncSequences () throws SQLException {
+      Connection conn = _esql.borrowConnection ();
+      boolean failed = true;
+      try {
+         Statement stmt = conn.createStatement ();
+         try {
+            for (String[] seq : IdAllocator.SEQUENCES)
+               stmt.executeQuery (IdAllocator.resyncSql (seq)).close ();
+         }finally {
+            stmt.close ();
+         }
+         failed = false;
+      }finally {
+         _esql.releaseConnection (conn, failed);
+      }
+   }//end resyncSequences
+
+   /*
+    * Reads the definitions of the foreign keys, unique constraints and
+    * secondary indexes of the loaded tables, then drops them.  Each entry of
+    * constraints is {table, name, type, definition, table kind}, each entry
+    * of indexes is {name, definition}.  Dropping them from a partitioned
+    * table drops them from its partitions too.
+    */
+   private void dropConstraintsAndIndexes (List<String[]> constraints, List<String[]> indexes) throws SQLException {
+      Connection conn = _esql.borrowConnection ();
+      boolean failed = true;
+      try {
+         StringBuilder tables = new StringBuilder ();
+         for (String name : tableNames ())
+            tables.append (tables.length () == 0 ? "'" : ", '").append (name).append ("'");
+         readRows (conn, String.format (CONSTRAINTS_SQL, tables), constraints, 5);
+         readRows (conn, String.format (INDEXES_SQL, tables), indexes, 2);
+         conn.setAutoCommit (false);
+         Statement stmt = conn.createStatement ();
+         try {
+            // foreign keys first, a unique constraint may be referenced by one
+            for (int pass = 0; pass < 2; ++pass) {
+               for (String[] c : constraints) {
+                  if (c[2].equals (pass == 0 ? "f" : "u"))
+                     stmt.executeUpdate ("ALTER TABLE " + c[0] + " DROP CONSTRAINT " + c[1]);
+               }
+            }
+            for (String[] i : indexes)
+               stmt.executeUpdate ("DROP INDEX " + i[0]);
+         }finally {
+            stmt.close ();
+         }
+         conn.commit ();
+         failed = false;
+      }finally {
+         _esql.releaseConnection (conn, failed);
+      }
+      System.out.println ("Deferred " + constraints.size () + " constraints and " + indexes.size () + " indexes");
+   }//end dropConstraintsAndIndexes
+
+   /*
+    * Recreates the dropped indexes and unique constraints in parallel, then
+    * re-adds the foreign keys without checking them and validates them in
+    * parallel.
+    */
+   private void rebuild (ExecutorService workers, List<String[]> constraints, List<String[]> indexes) throws SQLException {
+      if (constraints.isEmpty () && indexes.isEmpty ())
+         return;
+      long phase = System.nanoTime ();
+      List<Callable<String>> builds = new ArrayList<Callable<String>> ();
+      // the definition of an index on a partitioned table reads ON ONLY,
+      // which would not build the index on the partitions
+      for (String[] i : indexes)
+         builds.add (ddl (i[0], i[1].replace (" ON ONLY ", " ON ")));
+      for (String[] c : constraints) {
+         if (c[2].equals ("u"))
+            builds.add (ddl (c[1], "ALTER TABLE " + c[0] + " ADD CONSTRAINT " + c[1] + " " + c[3]));
+      }
+      runAll (workers, builds);
+      report ("rebuild indexes", phase);
+
+      phase = System.nanoTime ();
+      List<Callable<String>> validations = new ArrayList<Callable<String>> ();
+      for (String[] c : constraints) {
+         if (!c[2].equals ("f"))
+            continue;
+         String def = c[3].endsWith (" NOT VALID") ? c[3].substring (0, c[3].length () - 10) : c[3];
+         // a partitioned table takes no NOT VALID foreign keys, add and
+         // check it in one step
+         if (c[4].equals ("p")) {
+            validations.add (ddl (c[1], "ALTER TABLE " + c[0] + " ADD CONSTRAINT " + c[1] + " " + def));
+            continue;
+         }
+         _esql.executeUpdate ("ALTER TABLE " + c[0] + " ADD CONSTRAINT " + c[1] + " " + def + " NOT VALID");
+         validations.add (ddl (c[1], "ALTER TABLE " + c[0] + " VALIDATE CONSTRAINT " + c[1]));
+      }
+      runAll (workers, validations);
+      report ("validate foreign keys", phase);
+   }//end rebuild
+
+   /*
+    * A task that runs one DDL statement on its own pooled connection.
+    */
+   private Callable<String> ddl (final String name, final String sql) {
+      return new Callable<String> () {
+         public String call () throws Exception {
+            long start = System.nanoTime ();
+            _esql.executeUpdate (sql);
+            return String.format ("%-30s %8d ms", name, millis (System.nanoTime () - start));
+         }
+      };
+   }//end ddl
+
+   /*
+    * Runs the tasks in parallel, prints their results in order and rethrows
+    * the first failure once all of them have finished.
+    */
+   private static void runAll (ExecutorService workers, List<Callable<String>> tasks) throws SQLException {
+      List<Future<String>> results = new ArrayList<Future<String>> ();
+      for (Callable<String> task : tasks)
+         results.add (workers.submit (task));
+      SQLException failure = null;
+      for (Future<String> f : results) {
+         try {
+            System.out.println (f.get ());
+         }catch (ExecutionException e) {
+            Throwable cause = e.getCause ();
+            if (failure == null)
+               failure = cause instanceof SQLException
+                  ? (SQLException) cause
+                  : new SQLException (cause.getMessage (), cause);
+         }catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            throw new SQLException ("Interrupted while loading", e);
+         }
+      }//end for
+      if (failure != null)
+         throw failure;
+   }//end runAll
+
+   /**
+    * Loads one data file into its table in a single transaction.
+    *
+    * @param t the table to load
+    * @return a line reporting the row count and rate
+    */
+   String load (Table t) throws SQLException, IOException {
+      File file = new File (_dataDir, t.file);
+      long start = System.nanoTime ();
+      long rows;
+      Connection conn = _esql.borrowConnection ();
+      boolean failed = true;
+      try {
+         conn.setAutoCommit (false);
+         Reader reader = new BufferedReader (new InputStreamReader (new FileInputStream (file), "UTF-8"), 1 << 16);
+         try {
+            Object copyApi = copyApi (conn);
+            if (copyApi != null)
+               rows = copyIn (copyApi, t, reader);
+            else
+               rows = insertBatches (conn, t, reader);
+         }finally {
+            reader.close ();
+         }
+         conn.commit ();
+         failed = false;
+      }finally {
+         _esql.releaseConnection (conn, failed);
+      }
+      long elapsed = System.nanoTime () - start;
+      return String.format ("%-20s %10d rows in %8d ms (%.0f rows/s)",
+                            t.name, rows, millis (elapsed), rows / Math.max (elapsed / 1e9, 1e-9));
+   }//end load
+
+   /*
+    * Streams the file through COPY FROM STDIN.
+    */
+   private static long copyIn (Object copyApi, Table t, Reader reader) throws SQLException, IOException {
+      String sql = "COPY " + t.name + "(" + t.columnList () + ") FROM STDIN WITH DELIMITER ','";
+      try {
+         Method copyIn = copyApi.getClass ().getMethod ("copyIn", String.class, Reader.class);
+         return ((Long) copyIn.invoke (copyApi, sql, reader)).longValue ();
+      }catch (InvocationTargetException e) {
+         Throwable cause = e.getCause ();
+         if (cause instanceof SQLException)
+            throw (SQLException) cause;
+         if (cause instanceof IOException)
+            throw (IOException) cause;
+         throw new SQLException ("COPY into " + t.name + " failed", cause);
+      }catch (ReflectiveOperationException e) {
+         throw new SQLException ("COPY into " + t.name + " failed", e);
+      }
+   }//end copyIn
+
+   /*
+    * Sends the file as batched INSERTs, casting each value to its column type.
+    */
+   private static long insertBatches (Connection conn, Table t, Reader reader) throws SQLException, IOException {
+      StringBuilder sql = new StringBuilder ("INSERT INTO ").append (t.name)
+         .append ("(").append (t.columnList ()).append (") VALUES (");
+      for (int i = 0; i < t.types.length; ++i) {
+         if (i > 0)
+            sql.append (", ");
+         sql.append ("CAST(? AS ").append (t.types[i]).append (")");
+      }
+      sql.append (")");
+
+      PreparedStatement stmt = conn.prepareStatement (sql.toString ());
+      try {
+         CopyTextReader rows = new CopyTextReader (reader, ',', t.columns.length);
+         long count = 0;
+         String[] fields;
+         while ((fields = rows.next ()) != null) {
+            for (int i = 0; i < fields.length; ++i)
+               stmt.setString (i + 1, fields[i]);
+            stmt.addBatch ();
+            if (++count % BATCH_SIZE == 0)
+               stmt.executeBatch ();
+         }//end while
+         if (count % BATCH_SIZE != 0)
+            stmt.executeBatch ();
+         return count;
+      }finally {
+         stmt.close ();
+      }
+   }//end insertBatches
+
+   /*
+    * Returns the driver's CopyManager when the driver has one.
+    */
+   private static Object copyApi (Connection conn) {
+      try {
+         Class<?> pgConnection = Class.forName ("org.postgresql.PGConnection");
+         if (!pgConnection.isInstance (conn))
+            return null;
+         return pgConnection.getMethod ("getCopyAPI").invoke (conn);
+      }catch (ReflectiveOperationException e) {
+         return null;
+      }
+   }//end copyApi
+
+   private void truncateAll () throws SQLException {
+      StringBuilder sql = new StringBuilder ("TRUNCATE ");
+      String[] names = tableNames ();
+      for (int i = 0; i < names.length; ++i) {
+         if (i > 0)
+            sql.append (", ");
+         sql.append (names[i]);
+      }
+      _esql.executeUpdate (sql.append (" CASCADE").toString ());
+   }//end truncateAll
+
+   /*
+    * Names of the loaded tables as the catalog spells them (lower case).
+    */
+   private static String[] tableNames () {
+      List<String> names = new ArrayList<String> ();
+      for (Table[] wave : WAVES) {
+         for (Table t : wave)
+            names.add (t.name.toLowerCase ());
+      }
+      return names.toArray (new String[names.size ()]);
+   }//end tableNames
+
+   private static void readRows (Connection conn, String sql, List<String[]> rows, int columns) throws SQLException {
+      Statement stmt = conn.createStatement ();
+      try {
+         ResultSet rs = stmt.executeQuery (sql);
+         while (rs.next ()) {
+            String[] row = new String[columns];
+            for (int i = 0; i < columns; ++i)
+               row[i] = rs.getString (i + 1);
+            rows.add (row);
+         }
+         rs.close ();
+      }finally {
+         stmt.close ();
+      }
+   }//end readRows
+
+   private static void report (String phase, long startNanos) {
+      System.out.println (String.format ("-- %-30s %8d ms", phase, millis (System.nanoTime () - startNanos)));
+   }//end report
+
+   private static long millis (long nanos) {
+      return nanos / 1000000;
+   }//end millis
+
+   /**
+    * Splits COPY text format lines into fields, undoing backslash escapes and
+    * turning \N into null.
+    */
+   static class CopyTextReader {
+      private final BufferedReader _in;
+      private final char _delimiter;
+      private final String[] _fields;
+      private final StringBuilder _field = new StringBuilder ();
+
+      CopyTextReader (Reader in, char delimiter, int columns) {
+         this._in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader (in);
+         this._delimiter = delimiter;
+         this._fields = new String[columns];
+      }
+
+      /**
+       * @return the fields of the next line, in a reused array, or null at
+       *         the end of the input
+       */
+      String[] next () throws IOException {
+         String line;
+         do {
+            line = _in.readLine ();
+            if (line == null || line.equals ("\\."))
+               return null;
+         }while (line.length () == 0);
+
+         int col = 0;
+         boolean escaped = false;
+         _field.setLength (0);
+         for (int i = 0; i <= line.length (); ++i) {
+            if (i == line.length () || (!escaped && line.charAt (i) == _delimiter)) {
+               if (col >= _fields.length)
+                  throw new IOException ("Too many fields in line: " + line);
+               _fields[col++] = isNull (line, i) ? null : _field.toString ();
+               _field.setLength (0);
+               continue;
+            }
+            char c = line.charAt (i);
+            if (escaped) {
+               switch (c) {
+                  case 't': _field.append ('\t'); break;
+                  case 'n': _field.append ('\n'); break;
+                  case 'r': _field.append ('\r'); break;
+                  default: _field.append (c);
+               }
+               escaped = false;
+            }else if (c == '\\') {
+               escaped = true;
+            }else {
+               _field.append (c);
+            }
+         }//end for
+         if (col != _fields.length)
+            throw new IOException ("Expected " + _fields.length + " fields but found " + col + ": " + line);
+         return _fields;
+      }
+
+      // true if the field that ends at index end is exactly \N
+      private boolean isNull (String line, int end) {
+         int start = end - 2;
+         return start >= 0 && line.charAt (start) == '\\' && line.charAt (start + 1) == 'N'
+            && (start == 0 || line.charAt (start - 1) == _delimiter);
+      }
+   }//end CopyTextReader
+
+}//end BulkLoader
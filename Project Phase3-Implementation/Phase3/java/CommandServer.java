@@ -0,0 +1,235 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the menu operations (see {@link Operations}) for clients on a local
+ * TCP port, so a script pays one round trip per operation instead of
+ * starting a JVM, loading the driver and connecting.  The pool, statement
+ * caches and key blocks stay warm for as long as the server runs.  The port
+ * is bound to the loopback address only.
+ *
+ * The protocol is lines of UTF-8 text.  A request is one line, the
+ * operation name or menu number followed by its inputs, separated by tabs.
+ * The response is a status line and the lines it announces:
+ *
+ *    OK &lt;n&gt;          n lines follow, the column names and then the rows,
+ *                   tab separated
+ *    ERR &lt;message&gt;   the request failed, nothing follows
+ *    BUSY &lt;message&gt;  the operation's class is overloaded (see
+ *                   {@link AdmissionControl}), nothing was run; try later
+ *
+ * Tabs, newlines, carriage returns and backslashes in inputs and values are
+ * escaped as \t, \n, \r and \\, and SQL NULL is \N, as in the text format of
+ * COPY.  A connection may send any number of requests, one at a time;
+ * "stats" answers with the query statistics, "help" with the operations and
+ * their inputs, and "quit" closes the connection.
+ *
+ * Every connection is served by its own thread (virtual where the JVM has
+ * them, see {@link Threads}); the operations share the connection pool.
+ */
+public class CommandServer {
+
+   static final Charset UTF8 = Charset.forName ("UTF-8");
+
+   private final DBProject _esql;
+   private final int _port;
+   private final AtomicInteger _clients = new AtomicInteger ();
+
+   public CommandServer (DBProject esql, int port) {
+      this._esql = esql;
+      this._port = port;
+   }//end CommandServer
+
+   /**
+    * Accepts clients until the process is stopped.
+    *
+    * @throws java.io.IOException when the port cannot be bound
+    */
+   public void serve () throws IOException {
+      ServerSocket server = new ServerSocket (this._port, 128, InetAddress.getByName ("127.0.0.1"));
+      System.out.println ("Serving the menu operations on 127.0.0.1:" + server.getLocalPort ()
+         + " (" + (Threads.isVirtual () ? "virtual" : "platform") + " threads)");
+      try {
+         while (true) {
+            final Socket client = server.accept ();
+            Threads.start ("client-" + _clients.incrementAndGet (), new Runnable () {
+               public void run () {
+                  try {
+                     session (client);
+                  }catch (IOException e) {
+                     // the client went away
+                  }finally {
+                     try {
+                        client.close ();
+                     }catch (IOException e) {
+                        // ignored.
+                     }
+                  }
+               }
+            });
+         }//end while
+      }finally {
+         server.close ();
+      }
+   }//end serve
+
+   /*
+    * Answers the requests of one client until it quits or disconnects.
+    */
+   private void session (Socket client) throws IOException {
+      // responses are small and the client waits for each one
+      client.setTcpNoDelay (true);
+      BufferedReader in = new BufferedReader (new InputStreamReader (client.getInputStream (), UTF8));
+      Writer out = new BufferedWriter (new OutputStreamWriter (client.getOutputStream (), UTF8));
+      String line;
+      while ((line = in.readLine ()) != null) {
+         if (line.length () == 0)
+            continue;
+         if (line.equals ("quit"))
+            break;
+         respond (line, out);
+         out.flush ();
+      }//end while
+   }//end session
+
+   /*
+    * Runs one request and writes its response.  The result is collected
+    * before the status line, which announces its line count.
+    */
+   void respond (String line, Writer out) throws IOException {
+      String[] fields = line.split ("\t", -1);
+      for (int i = 0; i < fields.length; ++i)
+         fields[i] = unescape (fields[i]);
+      StringWriter body = new StringWriter ();
+      Lines result = new Lines (body);
+      try {
+         if (fields[0].equals ("stats")) {
+            lines (result, this._esql.getQueryStatistics () + "\n" + this._esql.getAdmissionControl ().summary ()
+                           + "\n" + this._esql.getPoolStatistics ());
+         }else if (fields[0].equals ("help")) {
+            lines (result, Operations.usage ());
+         }else {
+            Operations.Operation op = Operations.get (fields[0]);
+            if (op == null)
+               throw new IllegalArgumentException ("Unknown operation " + fields[0] + ", try help");
+            String[] args = new String[fields.length - 1];
+            System.arraycopy (fields, 1, args, 0, args.length);
+            op.run (this._esql, args, result);
+         }
+      }catch (RuntimeException e) {
+         // bad inputs are IllegalArgumentExceptions
+         error (out, e.getMessage () != null ? e.getMessage () : e.toString ());
+         return;
+      }catch (AdmissionControl.Rejected e) {
+         out.write ("BUSY " + e.getMessage () + "\n");
+         return;
+      }catch (SQLException e) {
+         error (out, e.getMessage ());
+         return;
+      }
+      out.write ("OK " + result.count + "\n");
+      out.write (body.toString ());
+   }//end respond
+
+   private static void error (Writer out, String message) throws IOException {
+      out.write ("ERR " + String.valueOf (message).replace ('\n', ' ').replace ('\r', ' ') + "\n");
+   }//end error
+
+   /*
+    * Writes text as a one column result, one row per line.
+    */
+   private static void lines (ResultSink sink, String text) throws IOException {
+      String[] name = { "line" };
+      for (String l : text.split ("\n"))
+         sink.row (name, l);
+   }//end lines
+
+   /**
+    * Escapes a value for a protocol line.
+    */
+   static String escape (String s) {
+      if (s == null)
+         return "\\N";
+      StringBuilder b = null;
+      for (int i = 0; i < s.length (); ++i) {
+         char c = s.charAt (i);
+         String e = c == '\\' ? "\\\\" : c == '\t' ? "\\t" : c == '\n' ? "\\n" : c == '\r' ? "\\r" : null;
+         if (e != null && b == null)
+            b = new StringBuilder (s.length () + 8).append (s, 0, i);
+         if (b != null) {
+            if (e != null)
+               b.append (e);
+            else
+               b.append (c);
+         }
+      }
+      return b == null ? s : b.toString ();
+   }//end escape
+
+   /**
+    * Reverses {@link #escape(String)}.  \N becomes an empty input, as the
+    * operations take no NULL inputs.
+    */
+   static String unescape (String s) {
+      if (s.indexOf ('\\') < 0)
+         return s;
+      StringBuilder b = new StringBuilder (s.length ());
+      for (int i = 0; i < s.length (); ++i) {
+         char c = s.charAt (i);
+         if (c != '\\' || i + 1 == s.length ()) {
+            b.append (c);
+            continue;
+         }
+         char n = s.charAt (++i);
+         switch (n) {
+            case 't': b.append ('\t'); break;
+            case 'n': b.append ('\n'); break;
+            case 'r': b.append ('\r'); break;
+            case 'N': break;
+            default: b.append (n); break;
+         }
+      }
+      return b.toString ();
+   }//end unescape
+
+   /**
+    * Tab separated lines with escaped values, counting the lines written.
+    */
+   static class Lines extends ResultSink {
+      int count = 0;
+
+      Lines (Writer out) {
+         super (out);
+      }
+
+      protected void header () throws IOException {
+         writeLine (columns);
+      }
+
+      protected void writeRow () throws IOException {
+         writeLine (values);
+      }
+
+      private void writeLine (String[] fields) throws IOException {
+         for (int i = 0; i < fields.length; ++i) {
+            if (i > 0)
+               out.write ('\t');
+            out.write (escape (fields[i]));
+         }
+         out.write ('\n');
+         ++count;
+      }
+   }//end Lines
+
+}//end CommandServer
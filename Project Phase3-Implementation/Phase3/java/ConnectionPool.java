@@ -0,0 +1,372 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small fixed-bound pool of physical PostgreSQL connections.  Connections
+ * are borrowed for the duration of one operation and handed back afterwards,
+ * so several operations can run against the database at the same time.
+ *
+ * The pool keeps at least <code>minSize</code> connections open, never opens
+ * more than <code>maxSize</code>, closes idle connections above the minimum
+ * once they have been unused for <code>idleTimeout</code> milliseconds and
+ * runs a validation query before handing out a connection that has been idle
+ * for a while.  Every pooled connection carries its own {@link StatementCache}.
+ */
+public class ConnectionPool {
+
+   // connection settings
+   private final String _url;
+   private final String _user;
+   private final String _passwd;
+
+   // pool limits (milliseconds for all timeouts)
+   private final int _minSize;
+   private final int _maxSize;
+   private final long _idleTimeout;
+   private final long _maxWait;
+   private final long _validateAfter;
+   private final String _validationQuery;
+
+   // idle connections, most recently used first
+   private final ArrayDeque<Entry> _idle = new ArrayDeque<Entry>();
+   // every open connection, idle or borrowed
+   private final IdentityHashMap<Connection, Entry> _entries = new IdentityHashMap<Connection, Entry>();
+   private int _total = 0;
+   private boolean _closed = false;
+
+   // statistics, guarded by this
+   private long _created = 0;
+   private long _destroyed = 0;
+   private long _borrowed = 0;
+   private long _waited = 0;
+   private long _timeouts = 0;
+   private long _validationFailures = 0;
+   private int _peakActive = 0;
+
+   private final ScheduledExecutorService _evictor;
+
+   /**
+    * A physical connection, its prepared statements and the time it was last
+    * returned.
+    */
+   private static class Entry {
+      final Connection connection;
+      final StatementCache statements;
+      long lastUsed;
+
+      Entry (Connection connection) {
+         this.connection = connection;
+         this.statements = StatementCache.fromSystemProperties (connection);
+         this.lastUsed = System.currentTimeMillis ();
+      }
+   }//end Entry
+
+   /**
+    * Creates a new pool and opens the minimum number of connections.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param minSize number of connections kept open at all times
+    * @param maxSize upper bound on the number of open connections
+    * @param idleTimeout idle time after which surplus connections are closed
+    * @param maxWait how long a borrower waits for a free connection
+    * @throws java.sql.SQLException when the initial connections cannot be opened
+    */
+   public ConnectionPool (String url, String user, String passwd,
+                          int minSize, int maxSize,
+                          long idleTimeout, long maxWait) throws SQLException {
+      if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+         throw new IllegalArgumentException ("Invalid pool size " + minSize + ".." + maxSize);
+      this._url = url;
+      this._user = user;
+      this._passwd = passwd;
+      this._minSize = minSize;
+      this._maxSize = maxSize;
+      this._idleTimeout = idleTimeout;
+      this._maxWait = maxWait;
+      this._validateAfter = Long.getLong ("dbproject.pool.validateAfter", 5000L);
+      this._validationQuery = System.getProperty ("dbproject.pool.validationQuery", "SELECT 1");
+
+      for (int i = 0; i < minSize; ++i) {
+         Entry e = open ();
+         synchronized (this) {
+            ++_total;
+            _idle.push (e);
+         }
+      }//end for
+
+      _evictor = Executors.newSingleThreadScheduledExecutor (new ThreadFactory () {
+         public Thread newThread (Runnable r) {
+            Thread t = new Thread (r, "pool-evictor");
+            t.setDaemon (true);
+            return t;
+         }
+      });
+      long period = Math.max (1000L, idleTimeout / 2);
+      _evictor.scheduleWithFixedDelay (new Runnable () {
+         public void run () {
+            evictIdle ();
+         }
+      }, period, period, TimeUnit.MILLISECONDS);
+   }//end ConnectionPool
+
+   /**
+    * Creates a pool configured from the <code>dbproject.pool.*</code> system
+    * properties (min, max, idleTimeout, maxWait).
+    */
+   public static ConnectionPool fromSystemProperties (String url, String user, String passwd) throws SQLException {
+      return new ConnectionPool (url, user, passwd,
+                                 Integer.getInteger ("dbproject.pool.min", 1),
+                                 Integer.getInteger ("dbproject.pool.max", 8),
+                                 Long.getLong ("dbproject.pool.idleTimeout", 60000L),
+                                 Long.getLong ("dbproject.pool.maxWait", 30000L));
+   }//end fromSystemProperties
+
+   /**
+    * Borrows a connection, opening a new one if none is idle and the pool has
+    * not reached its maximum size, or waiting for one to be returned otherwise.
+    *
+    * @return an open connection in autocommit mode
+    * @throws java.sql.SQLException when no connection became free in time
+    */
+   public Connection borrow () throws SQLException {
+      long deadline = System.currentTimeMillis () + _maxWait;
+      boolean waited = false;
+      while (true) {
+         Entry e = null;
+         boolean create = false;
+         synchronized (this) {
+            if (_closed)
+               throw new SQLException ("Connection pool is closed");
+            if (!_idle.isEmpty ()) {
+               e = _idle.pop ();
+            }else if (_total < _maxSize) {
+               ++_total;
+               create = true;
+            }else {
+               long remaining = deadline - System.currentTimeMillis ();
+               if (remaining <= 0) {
+                  ++_timeouts;
+                  throw new SQLException ("Timed out after " + _maxWait + "ms waiting for a database connection");
+               }
+               if (!waited) {
+                  ++_waited;
+                  waited = true;
+               }
+               try {
+                  wait (remaining);
+               }catch (InterruptedException ie) {
+                  Thread.currentThread ().interrupt ();
+                  throw new SQLException ("Interrupted while waiting for a database connection");
+               }
+               continue;
+            }
+         }//end synchronized
+
+         if (create) {
+            try {
+               e = open ();
+            }catch (SQLException ex) {
+               synchronized (this) {
+                  --_total;
+                  notifyAll ();
+               }
+               throw ex;
+            }
+         }else if (System.currentTimeMillis () - e.lastUsed > _validateAfter && !isHealthy (e.connection)) {
+            synchronized (this) {
+               ++_validationFailures;
+            }
+            discard (e);
+            continue;
+         }
+
+         synchronized (this) {
+            ++_borrowed;
+            int active = _total - _idle.size ();
+            if (active > _peakActive)
+               _peakActive = active;
+         }
+         return e.connection;
+      }//end while
+   }//end borrow
+
+   /**
+    * Returns the prepared statement cache of a borrowed connection.
+    *
+    * @param connection the connection obtained from {@link #borrow()}
+    * @return the statement cache bound to that connection
+    */
+   public synchronized StatementCache getStatementCache (Connection connection) {
+      Entry e = _entries.get (connection);
+      if (e == null)
+         throw new IllegalArgumentException ("Connection does not belong to this pool");
+      return e.statements;
+   }//end getStatementCache
+
+   /**
+    * Returns a borrowed connection to the pool.
+    *
+    * @param connection the connection obtained from {@link #borrow()}
+    */
+   public void release (Connection connection) {
+      release (connection, false);
+   }//end release
+
+   /**
+    * Returns a borrowed connection to the pool.  When the caller saw an error
+    * on the connection it is checked before being reused and closed if it no
+    * longer answers.
+    *
+    * @param connection the connection obtained from {@link #borrow()}
+    * @param suspect true if an error occurred while the connection was in use
+    */
+   public void release (Connection connection, boolean suspect) {
+      if (connection == null)
+         return;
+      Entry entry;
+      synchronized (this) {
+         entry = _entries.get (connection);
+      }
+      if (entry == null)
+         throw new IllegalArgumentException ("Connection does not belong to this pool");
+      boolean reusable;
+      try {
+         reusable = !connection.isClosed ();
+         if (reusable && !connection.getAutoCommit ()) {
+            connection.rollback ();
+            connection.setAutoCommit (true);
+         }
+      }catch (SQLException e) {
+         reusable = false;
+      }
+      if (reusable && suspect && !isHealthy (connection)) {
+         synchronized (this) {
+            ++_validationFailures;
+         }
+         reusable = false;
+      }
+      if (!reusable || isClosed ()) {
+         discard (entry);
+         return;
+      }
+      synchronized (this) {
+         entry.lastUsed = System.currentTimeMillis ();
+         _idle.push (entry);
+         notifyAll ();
+      }
+   }//end release
+
+   /**
+    * Closes every idle connection and stops handing out new ones.  Borrowed
+    * connections are closed as they are released.
+    */
+   public void close () {
+      _evictor.shutdownNow ();
+      ArrayDeque<Entry> toClose;
+      synchronized (this) {
+         _closed = true;
+         toClose = new ArrayDeque<Entry> (_idle);
+         _idle.clear ();
+      }
+      for (Entry e : toClose)
+         discard (e);
+   }//end close
+
+   private synchronized boolean isClosed () {
+      return _closed;
+   }//end isClosed
+
+   /**
+    * @return a one line summary of the pool counters
+    */
+   public synchronized String getStatistics () {
+      return "pool[size=" + _total + ", idle=" + _idle.size ()
+           + ", active=" + (_total - _idle.size ()) + ", peakActive=" + _peakActive
+           + ", min=" + _minSize + ", max=" + _maxSize
+           + ", created=" + _created + ", destroyed=" + _destroyed
+           + ", borrowed=" + _borrowed + ", waited=" + _waited
+           + ", timeouts=" + _timeouts + ", validationFailures=" + _validationFailures + "]";
+   }//end getStatistics
+
+   public int getMaxSize () {
+      return _maxSize;
+   }//end getMaxSize
+
+   /*
+    * Closes connections that have been idle longer than the idle timeout
+    * while keeping at least the minimum number of connections open.
+    */
+   private void evictIdle () {
+      ArrayDeque<Entry> toClose = new ArrayDeque<Entry> ();
+      synchronized (this) {
+         long now = System.currentTimeMillis ();
+         // the least recently used connections sit at the tail
+         Iterator<Entry> it = _idle.descendingIterator ();
+         while (it.hasNext () && _total - toClose.size () > _minSize) {
+            Entry e = it.next ();
+            if (now - e.lastUsed < _idleTimeout)
+               break;
+            it.remove ();
+            toClose.add (e);
+         }
+      }
+      for (Entry e : toClose)
+         discard (e);
+   }//end evictIdle
+
+   private Entry open () throws SQLException {
+      Entry e = new Entry (DriverManager.getConnection (_url, _user, _passwd));
+      synchronized (this) {
+         ++_created;
+         _entries.put (e.connection, e);
+      }
+      return e;
+   }//end open
+
+   private boolean isHealthy (Connection connection) {
+      try {
+         if (connection.isClosed ())
+            return false;
+         Statement stmt = connection.createStatement ();
+         try {
+            stmt.executeQuery (_validationQuery).close ();
+         }finally {
+            stmt.close ();
+         }
+         return true;
+      }catch (SQLException e) {
+         return false;
+      }
+   }//end isHealthy
+
+   private void discard (Entry e) {
+      synchronized (this) {
+         _entries.remove (e.connection);
+         --_total;
+         ++_destroyed;
+         notifyAll ();
+      }
+      e.statements.close ();
+      closeQuietly (e.connection);
+   }//end discard
+
+   private static void closeQuietly (Connection connection) {
+      try {
+         connection.close ();
+      }catch (SQLException e) {
+         // ignored.
+      }
+   }//end closeQuietly
+
+}//end ConnectionPool
@@ -11,9 +11,10 @@
  */
 
 
-import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 
 import javax.management.RuntimeErrorException;
@@ -24,9 +25,18 @@ import java.sql.SQLException;
 import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
@@ -35,8 +45,38 @@ import java.util.Calendar;
  */
 public class DBProject {
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // pool of physical database connections shared by all operations.
+   private ConnectionPool _pool = null;
+
+   // primary keys handed out in blocks from the key sequences
+   private final IdAllocator _ids = new IdAllocator (this);
+
+   // latency, rows and errors per menu operation, and the slow query log
+   private final QueryMetrics _metrics = new QueryMetrics ();
+
+   // concurrency limits per operation class in the service modes
+   private AdmissionControl _admission = null;
+
+   // rows fetched per round trip when streaming query results, 0 loads
+   // the whole result at once
+   private final int _fetchSize = Integer.getInteger ("dbproject.fetchSize", 1000);
+   private static final String CURSOR_NAME = "dbproject_cursor";
+
+   // result format used for the menu output (tsv, table, csv or json)
+   private final String _format = System.getProperty ("dbproject.format", "tsv");
+
+   // local port the serve mode listens on
+   static final int SERVE_PORT = Integer.getInteger ("dbproject.serve.port", 5166);
+
+   // port the http mode listens on
+   static final int HTTP_PORT = Integer.getInteger ("dbproject.http.port", 8166);
+
+   // months of history the archive mode keeps in the hot tables
+   static final int ARCHIVE_MONTHS = Integer.getInteger ("dbproject.archive.months", 24);
+
+   // query results are written through one large buffer instead of a
+   // System.out call per cell
+   static final Writer out = new BufferedWriter (new OutputStreamWriter (System.out), 1 << 16);
 
    // handling the keyboard inputs through a BufferedReader
    // This variable can be global for convenience.
@@ -60,8 +100,9 @@ public class DBProject {
          String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
          System.out.println ("Connection URL: " + url + "\n");
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
+         // open the connection pool (sized by the dbproject.pool.* properties)
+         this._pool = ConnectionPool.fromSystemProperties(url, user, passwd);
+         this._admission = new AdmissionControl(this._pool.getMaxSize());
          System.out.println("Done");
       }catch (Exception e){
          System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
@@ -78,14 +119,57 @@ public class DBProject {
     * @throws java.sql.SQLException when update failed
     */
    public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+      long start = System.nanoTime ();
+      int rows = 0;
+      boolean failed = true;
+      try {
+         // borrows a connection from the pool for this statement only
+         Connection conn = this._pool.borrow ();
+         try {
+            // creates a statement object
+            Statement stmt = conn.createStatement ();
 
-      // issues the update instruction
-      stmt.executeUpdate (sql);
+            // issues the update instruction
+            rows = stmt.executeUpdate (sql);
+
+            // close the instruction
+            stmt.close ();
+            failed = false;
+         }finally {
+            this._pool.release (conn, failed);
+         }
+      }finally {
+         this._metrics.record (sql, null, System.nanoTime () - start, rows, failed);
+      }
+   }//end executeUpdate
 
-      // close the instruction
-      stmt.close ();
+   /**
+    * Method to execute a parameterized update SQL statement (INSERT, UPDATE
+    * or DELETE).  The statement is prepared once per connection and reused
+    * from the connection's statement cache on later calls.
+    *
+    * @param sql the SQL string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      int rows = 0;
+      boolean failed = true;
+      try {
+         Connection conn = this._pool.borrow ();
+         try {
+            PreparedStatement stmt = this._pool.getStatementCache (conn).prepare (sql, params);
+            rows = stmt.executeUpdate ();
+            failed = false;
+            return rows;
+         }finally {
+            this._pool.release (conn, failed);
+         }
+      }finally {
+         this._metrics.record (sql, params, System.nanoTime () - start, rows, failed);
+      }
    }//end executeUpdate
 
    /**
@@ -98,50 +182,267 @@ public class DBProject {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int executeQuery (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
+      return executeQuery (query, new Object[0]);
+   }//end executeQuery
+
+   /**
+    * Method to execute a parameterized query (i.e. SELECT) and output the
+    * results to standard out.  The statement is prepared once per connection
+    * and reused from the connection's statement cache on later calls.
+    *
+    * Unless the fetch size is 0 or the result is bounded (a LIMIT, or one
+    * of the small menu queries) the rows are streamed through a server side
+    * cursor, <code>fetchSize</code> rows at a time, so memory use does not
+    * grow with the size of the result.  Row count, time to first row and peak
+    * heap use are printed after the rows.
+    *
+    * @param query the query string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (String query, Object... params) throws SQLException {
+      QueryStats stats = executeQuery (ResultSink.create (this._format, out), query, params);
+      System.out.println (stats);
+      return stats.rows;
+   }//end executeQuery
+
+   /**
+    * Method to execute a parameterized query (i.e. SELECT) and render the
+    * rows to the given sink.
+    *
+    * @param sink the sink the rows are written to, flushed at the end
+    * @param query the query string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the row count, latency and heap figures of the query
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public QueryStats executeQuery (ResultSink sink, String query, Object... params) throws SQLException {
+      QueryStats stats = new QueryStats ();
+      boolean failed = true;
+      try {
+         Connection conn = this._pool.borrow ();
+         try {
+            StatementCache cache = this._pool.getStatementCache (conn);
+            if (this._fetchSize <= 0 || isBounded (query)) {
+               ResultSet rs = cache.prepare (query, params).executeQuery ();
+               printResult (rs, sink, stats);
+               rs.close ();
+            }else {
+               streamQuery (conn, cache, query, params, sink, stats);
+            }
+            sink.end ();
+            failed = false;
+         }catch (IOException e) {
+            throw new SQLException ("Unable to write query result: " + e.getMessage (), e);
+         }finally {
+            this._pool.release (conn, failed);
+         }
+      }finally {
+         this._metrics.record (query, params, System.nanoTime () - stats.start, stats.rows, failed);
+      }
+      return stats;
+   }//end executeQuery
+
+   /**
+    * Turns the current row of a result set into a value.
+    */
+   public interface RowMapper<T> {
+      T map (ResultSet rs) throws SQLException;
+   }//end RowMapper
+
+   /**
+    * Method to execute a parameterized query (i.e. SELECT) and return its
+    * rows as values instead of printing them.  The whole result is read at
+    * once, so it is meant for counts and short lists.
+    *
+    * @param mapper turns each row into a value
+    * @param query the query string with '?' placeholders
+    * @param params the values bound to the placeholders, in order
+    * @return the values of the rows, in order
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public <T> List<T> query (RowMapper<T> mapper, String query, Object... params) throws SQLException {
+      long start = System.nanoTime ();
+      List<T> rows = new ArrayList<T> ();
+      boolean failed = true;
+      try {
+         Connection conn = this._pool.borrow ();
+         try {
+            ResultSet rs = this._pool.getStatementCache (conn).prepare (query, params).executeQuery ();
+            while (rs.next ())
+               rows.add (mapper.map (rs));
+            rs.close ();
+            failed = false;
+            return rows;
+         }finally {
+            this._pool.release (conn, failed);
+         }
+      }finally {
+         this._metrics.record (query, params, System.nanoTime () - start, rows.size (), failed);
+      }
+   }//end query
 
-      // iterates through the result set and output them to standard out.
-      boolean outputHeader = true;
-      while (rs.next()){
-	 if(outputHeader){
-	    for(int i = 1; i <= numCol; i++){
-		System.out.print(rsmd.getColumnName(i) + "\t");
-	    }
-	    System.out.println();
-	    outputHeader = false;
-	 }
-         for (int i=1; i<=numCol; ++i)
-            System.out.print (rs.getString (i) + "\t");
-         System.out.println ();
+   /*
+    * True when the query returns few rows, so it is sent as a plain cached
+    * statement: one round trip, and a server prepared plan once it is used
+    * often, which a DECLARE never gets.
+    */
+   private static boolean isBounded (String query) {
+      return BOUNDED_QUERIES.contains (query) || query.toUpperCase ().contains (" LIMIT ");
+   }//end isBounded
+
+   /*
+    * Declares a cursor for the query inside a transaction and prints the
+    * rows batch by batch.
+    */
+   private void streamQuery (Connection conn, StatementCache cache, String query, Object[] params,
+                             ResultSink sink, QueryStats stats) throws SQLException, IOException {
+      conn.setAutoCommit (false);
+      cache.prepareCursor (CURSOR_NAME, query, params).executeUpdate ();
+      Statement fetch = conn.createStatement ();
+      try {
+         String fetchSql = "FETCH FORWARD " + this._fetchSize + " FROM " + CURSOR_NAME;
+         while (true) {
+            ResultSet rs = fetch.executeQuery (fetchSql);
+            int batch = printResult (rs, sink, stats);
+            rs.close ();
+            if (batch < this._fetchSize)
+               break;
+         }//end while
+         fetch.executeUpdate ("CLOSE " + CURSOR_NAME);
+      }finally {
+         fetch.close ();
+      }
+      conn.commit ();
+      conn.setAutoCommit (true);
+   }//end streamQuery
+
+   /*
+    * Renders the rows of a result set to the sink, which writes the column
+    * names before the first row.
+    */
+   private int printResult (ResultSet rs, ResultSink sink, QueryStats stats) throws SQLException, IOException {
+      int rowCount = 0;
+      while (rs.next ()) {
+         if (!sink.isStarted ())
+            stats.firstRow ();
+         sink.row (rs);
          ++rowCount;
       }//end while
-      stmt.close ();
+      stats.rows += rowCount;
+      stats.sampleHeap ();
       return rowCount;
-   }//end executeQuery
+   }//end printResult
+
+   /**
+    * Row count, latency and heap figures collected while a query runs.
+    */
+   static class QueryStats {
+      private static final Runtime RUNTIME = Runtime.getRuntime ();
+
+      final long start = System.nanoTime ();
+      long firstRowNanos = -1;
+      long peakHeap = 0;
+      int rows = 0;
+
+      void firstRow () {
+         if (firstRowNanos < 0)
+            firstRowNanos = System.nanoTime () - start;
+      }
+
+      void sampleHeap () {
+         long used = RUNTIME.totalMemory () - RUNTIME.freeMemory ();
+         if (used > peakHeap)
+            peakHeap = used;
+      }
+
+      public String toString () {
+         long total = System.nanoTime () - start;
+         return "(" + rows + (rows == 1 ? " row" : " rows")
+              + ", first row " + (firstRowNanos < 0 ? "-" : (firstRowNanos / 1000000) + " ms")
+              + ", total " + (total / 1000000) + " ms"
+              + ", peak heap " + (peakHeap >> 20) + " MB)";
+      }
+   }//end QueryStats
+
+   /**
+    * Borrows a pooled connection for work that spans several statements,
+    * such as a transaction.  It must be handed back with
+    * {@link #releaseConnection(Connection, boolean)}.
+    *
+    * @return an open connection in autocommit mode
+    * @throws java.sql.SQLException when no connection became free in time
+    */
+   public Connection borrowConnection () throws SQLException {
+      return this._pool.borrow ();
+   }//end borrowConnection
 
    /**
-    * Method to close the physical connection if it is open.
+    * Hands a borrowed connection back to the pool, rolling back any
+    * transaction left open on it.
+    *
+    * @param conn the connection obtained from {@link #borrowConnection()}
+    * @param failed true if an error occurred while the connection was in use
+    */
+   public void releaseConnection (Connection conn, boolean failed) {
+      this._pool.release (conn, failed);
+   }//end releaseConnection
+
+   /**
+    * Returns a new primary key from one of the key sequences in
+    * {@link IdAllocator}.
+    *
+    * @param sequence the key sequence, e.g. IdAllocator.CUSTOMER
+    * @return a key no other client receives
+    * @throws java.sql.SQLException when a new block of keys cannot be reserved
+    */
+   public int nextId (String sequence) throws SQLException {
+      return this._ids.next (sequence);
+   }//end nextId
+
+   /**
+    * @return the largest number of connections the pool opens
+    */
+   public int getPoolMaxSize () {
+      return this._pool.getMaxSize ();
+   }//end getPoolMaxSize
+
+   /**
+    * @return the prepared statement cache of a borrowed connection
+    */
+   public StatementCache getStatementCache (Connection conn) {
+      return this._pool.getStatementCache (conn);
+   }//end getStatementCache
+
+   /**
+    * @return the concurrency limits the service modes run operations under
+    */
+   public AdmissionControl getAdmissionControl () {
+      return this._admission;
+   }//end getAdmissionControl
+
+   /**
+    * @return a one line summary of the connection pool counters
+    */
+   public String getPoolStatistics () {
+      return this._pool.getStatistics ();
+   }//end getPoolStatistics
+
+   /**
+    * @return latency, row, error and slow statement counts per menu operation
+    */
+   public String getQueryStatistics () {
+      return this._metrics.summary ();
+   }//end getQueryStatistics
+
+   /**
+    * Method to close the pooled physical connections.
     */
    public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
-      }catch (SQLException e){
-         // ignored.
-      }//end try
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -150,17 +451,14 @@ public class DBProject {
     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
     */
    public static void main (String[] args) {
-      if (args.length != 3) {
-         System.err.println (
-            "Usage: " +
-            "java [-classpath <classpath>] " +
-            DBProject.class.getName () +
-            " <dbname> <port> <user>");
+      if (args.length < 3) {
+         usage ();
          return;
       }//end if
       
       Greeting();
       DBProject esql = null;
+      boolean succeeded = true;
       try{
          // use postgres JDBC driver.
          Class.forName ("org.postgresql.Driver").newInstance ();
@@ -171,6 +469,12 @@ public class DBProject {
          String user = args[2];
          esql = new DBProject (dbname, dbport, user, "");
 
+         // a mode after the connection arguments runs without the menu
+         if (args.length > 3) {
+            succeeded = runMode (esql, args);
+            return;
+         }//end if
+
          boolean keepon = true;
          while(keepon) {
             // These are sample SQL statements
@@ -192,9 +496,16 @@ public class DBProject {
 				System.out.println("14. List the repairs made by maintenance company");
 				System.out.println("15. Get top k maintenance companies based on repair count");
 				System.out.println("16. Get number of repairs occurred per year for a given hotel room");
-				System.out.println("17. < EXIT");
-
-            switch (readChoice()){
+				System.out.println("17. Get number of available and booked rooms on a date");
+				System.out.println("18. Search available rooms for a date range");
+				System.out.println("19. Book a stay of several nights");
+				System.out.println("20. Show query statistics");
+				System.out.println("21. < EXIT");
+
+            int choice = readChoice();
+            // statements run by the choice are counted under its name
+            QueryMetrics.setOperation (choice >= 1 && choice <= MENU_OPERATIONS.length ? MENU_OPERATIONS[choice - 1] : null);
+            switch (choice){
 				   case 1: addCustomer(esql); break;
 				   case 2: addRoom(esql); break;
 				   case 3: addMaintenanceCompany(esql); break;
@@ -211,16 +522,22 @@ public class DBProject {
 				   case 14: listRepairsMade(esql); break;
 				   case 15: topKMaintenanceCompany(esql); break;
 				   case 16: numberOfRepairsForEachRoomPerYear(esql); break;
-				   case 17: keepon = false; break;
+				   case 17: roomsOnDate(esql); break;
+				   case 18: searchAvailableRooms(esql); break;
+				   case 19: bookStay(esql); break;
+				   case 20: System.out.println(esql.getQueryStatistics ()); break;
+				   case 21: keepon = false; break;
 				   default : System.out.println("Unrecognized choice!"); break;
             }//end switch
          }//end while
       }catch(Exception e) {
          System.err.println (e.getMessage ());
+         succeeded = false;
       }finally{
          // make sure to cleanup the created table and close the connection.
          try{
             if(esql != null) {
+               System.out.println(esql.getPoolStatistics ());
                System.out.print("Disconnecting from database...");
                esql.cleanup ();
                System.out.println("Done\n\nBye !");
@@ -228,9 +545,88 @@ public class DBProject {
          }catch (Exception e) {
             // ignored.
          }//end try
+         // a mode that found a problem (e.g. a plan regression) fails the run
+         if (!succeeded)
+            System.exit (1);
       }//end try
    }//end main
    
+   /*
+    * Prints the command line syntax.
+    */
+   static void usage () {
+      System.err.println (
+         "Usage: " +
+         "java [-classpath <classpath>] " +
+         DBProject.class.getName () +
+         " <dbname> <port> <user> [<mode> <args>]\n" +
+         "modes:\n" +
+         "  load [<dataDir>]   replace all tables with the CSV files in dataDir (default ../data)\n" +
+         "  advise [apply]     suggest indexes for the menu queries and time them without and with\n" +
+         "  workload [<desks> [<seconds>]]\n" +
+         "                     run the menu operations from many desks at once (default 50 desks, 60 s)\n" +
+         "  plans record|check [<file>]\n" +
+         "                     save the menu query plans as baselines or compare them with the baselines\n" +
+         "                     (default file plan-baselines.txt), check fails on a changed or costlier plan\n" +
+         "  archive [<months>]  move bookings and repairs from before the last months (default " + ARCHIVE_MONTHS + ")\n" +
+         "                     to the archive tables\n" +
+         "  serve [<port>]     run the menu operations for clients on a local port (default " + SERVE_PORT + "),\n" +
+         "                     see dbclient.sh\n" +
+         "  http [<port>]      serve the menu operations as JSON endpoints under /api/ (default port " + HTTP_PORT + ")\n" +
+         "  batch <file> [<commitEvery>]\n" +
+         "                     run the operations in a CSV or JSON lines file, committing every commitEvery\n" +
+         "                     (default " + BatchRunner.COMMIT_EVERY + ") additions, and report the failed lines\n" +
+         "  dashboard <hotelID> <from> <to> [<k>]\n" +
+         "                     print a hotel's booked and available rooms of today and its top k (default 5) prices\n" +
+         "                     from..to, the three queries running at once");
+   }//end usage
+
+   /*
+    * Runs one of the non-interactive modes named after the connection
+    * arguments.  Returns false when the mode ran but found a problem.
+    */
+   static boolean runMode (DBProject esql, String[] args) throws Exception {
+      String mode = args[3];
+      if (mode.equals ("load")) {
+         new BulkLoader (esql, new File (args.length > 4 ? args[4] : "../data")).loadAll ();
+      }else if (mode.equals ("advise")) {
+         new IndexAdvisor (esql).advise (args.length > 4 && args[4].equals ("apply"));
+      }else if (mode.equals ("workload")) {
+         new WorkloadDriver (esql).run (args.length > 4 ? Integer.parseInt (args[4]) : 50,
+                                        args.length > 5 ? Integer.parseInt (args[5]) : 60);
+      }else if (mode.equals ("plans") && args.length > 4 && (args[4].equals ("record") || args[4].equals ("check"))) {
+         PlanGuard guard = new PlanGuard (esql, new File (args.length > 5 ? args[5] : "plan-baselines.txt"));
+         if (args[4].equals ("record"))
+            guard.record ();
+         else
+            return guard.check ();
+      }else if (mode.equals ("archive")) {
+         Calendar c = Calendar.getInstance ();
+         c.set (Calendar.DAY_OF_MONTH, 1);
+         c.add (Calendar.MONTH, -(args.length > 4 ? Integer.parseInt (args[4]) : ARCHIVE_MONTHS));
+         esql.archiveHistory (c.getTime ());
+      }else if (mode.equals ("serve")) {
+         new CommandServer (esql, args.length > 4 ? Integer.parseInt (args[4]) : SERVE_PORT).serve ();
+      }else if (mode.equals ("http")) {
+         new HttpApi (esql, args.length > 4 ? Integer.parseInt (args[4]) : HTTP_PORT).serve ();
+      }else if (mode.equals ("batch") && args.length > 4) {
+         return new BatchRunner (esql, new File (args[4]),
+                                 args.length > 5 ? Integer.parseInt (args[5]) : BatchRunner.COMMIT_EVERY).run ();
+      }else if (mode.equals ("dashboard") && args.length > 6) {
+         AsyncQueries async = new AsyncQueries (esql);
+         try {
+            System.out.println (async.dashboard (Integer.parseInt (args[4]), today (), parseDate (args[5]), parseDate (args[6]),
+                                                 args.length > 7 ? Integer.parseInt (args[7]) : 5, 60000L));
+         }finally {
+            async.shutdown ();
+         }
+      }else {
+         usage ();
+         return false;
+      }//end if
+      return true;
+   }//end runMode
+
    public static void Greeting(){
       System.out.println(
          "\n\n*******************************************************\n" +
@@ -258,12 +654,127 @@ public class DBProject {
       return input;
    }//end readChoice
 
+   /*
+    * Today's date, without the time of day.
+    */
+   static Date today () {
+      Calendar c = Calendar.getInstance ();
+      c.set (Calendar.HOUR_OF_DAY, 0);
+      c.set (Calendar.MINUTE, 0);
+      c.set (Calendar.SECOND, 0);
+      c.set (Calendar.MILLISECOND, 0);
+      return c.getTime ();
+   }//end today
+
+   /*
+    * Reads a date at a prompt (MM/dd/yyyy), today when left empty.
+    */
+   static Date readDateOrToday (String prompt) {
+      while (true) {
+         System.out.print (prompt + " (MM/dd/yyyy, empty for today): ");
+         try {
+            String text = in.readLine ().trim ();
+            return text.length () == 0 ? today () : parseDate (text);
+         }catch (Exception e) {
+            System.out.println ("Not a valid date");
+            System.out.println (e);
+         }
+      }
+   }//end readDateOrToday
+
+   /*
+    * Parses a date typed at a prompt (MM/dd/yyyy).
+    */
+   static Date parseDate (String text) throws ParseException {
+      SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+      return dateFormat.parse(text);
+   }//end parseDate
+
+   // names of the menu operations 1 to 19, used to label their statistics
+   static final String[] MENU_OPERATIONS = {
+      "addCustomer", "addRoom", "addMaintenanceCompany", "addRepair", "bookRoom",
+      "assignHouseCleaningToRoom", "repairRequest", "numberOfAvailableRooms", "numberOfBookedRooms",
+      "listHotelRoomBookingsForAWeek", "topKHighestRoomPriceForADateRange",
+      "topKHighestPriceBookingsForACustomer", "totalCostForCustomer", "listRepairsMade",
+      "topKMaintenanceCompany", "numberOfRepairsForEachRoomPerYear", "roomsOnDate",
+      "searchAvailableRooms", "bookStay"
+   };
+
    enum Gender {
       Male,
       Female,
       Other
    }
 
+   // SQL issued by the menu operations, parameters are bound in '?' order
+   static final String ADD_CUSTOMER_SQL =
+      "INSERT INTO Customer(customerID, fName, lName, Address, phNo, DOB, gender) VALUES (?, ?, ?, ?, ?, ?, CAST(? AS GenderType))";
+   static final String ADD_ROOM_SQL =
+      "INSERT INTO Room(hotelID, roomNo, roomType) VALUES (?, ?, ?)";
+   static final String ADD_MAINTENANCE_COMPANY_SQL =
+      "INSERT INTO MaintenanceCompany(cmpID, name, address, isCertified) VALUES (?, ?, ?, ?)";
+   static final String ADD_REPAIR_SQL =
+      "INSERT INTO Repair(rID, hotelID, roomNo, mCompany, repairDate, description, repairType) VALUES (?, ?, ?, ?, ?, ?, ?)";
+   static final String BOOK_ROOM_SQL =
+      "INSERT INTO Booking(bID, customer, hotelID, roomNo, bookingDate, noOfPeople, price) VALUES (?, ?, ?, ?, ?, ?, ?)";
+   // moves the history before a day to the archive tables
+   static final String ARCHIVE_HISTORY_SQL =
+      "SELECT * FROM archive_history(CAST(? AS date))";
+   // creates the monthly partitions of Booking between two dates
+   static final String ENSURE_PARTITIONS_SQL =
+      "SELECT ensure_booking_partitions(CAST(? AS date), CAST(? AS date))";
+   // 19 checks every night of a stay with one query before inserting them
+   static final String ROOM_BOOKED_NIGHTS_SQL =
+      "SELECT COUNT(*) FROM Booking b WHERE b.hotelID = ? AND b.roomNo = ? AND b.bookingDate >= ? AND b.bookingDate < ?";
+   static final String ASSIGN_HOUSE_CLEANING_SQL =
+      "INSERT INTO Assigned(asgID, staffID, hotelID, roomNo) VALUES (?, ?, ?, ?)";
+   static final String REPAIR_REQUEST_SQL =
+      "INSERT INTO Request(reqID, managerID, repairID, requestDate, description) VALUES (?, ?, ?, ?, ?)";
+   // 8, 9 and 17 count the booked room nights kept by the triggers in
+   // sql/inventory.sql for one night; a hotel without rooms, or one that
+   // does not exist, has none available or booked rather than no row
+   private static final String ROOMS_OF_NIGHT =
+      "FROM (SELECT CAST(? AS Date) AS night, CAST(? AS Numeric) AS hotelID) Q LEFT JOIN RoomsPerHotel H ON H.hotelID = Q.hotelID, LATERAL (SELECT COUNT(*) AS booked FROM RoomNightInventory I WHERE I.hotelID = Q.hotelID AND I.night = Q.night) N";
+   static final String AVAILABLE_ROOMS_SQL =
+      "SELECT COALESCE(H.rooms, 0) - N.booked AS available " + ROOMS_OF_NIGHT;
+   static final String BOOKED_ROOMS_SQL =
+      "SELECT N.booked AS booked " + ROOMS_OF_NIGHT;
+   // 10 to 14 read the archived history too (sql/archive.sql); for date
+   // ranges partition pruning skips archived months unless the range
+   // reaches back that far
+   static final String ROOMS_FREE_FOR_A_WEEK_SQL =
+      "SELECT r.hotelID, r.roomNo, r.roomType FROM Room r WHERE r.hotelID = ? AND r.roomNo NOT IN (SELECT b.roomNo FROM BookingHistory b WHERE b.hotelID = ? AND b.bookingDate >= ? AND b.bookingDate <= ?)";
+   static final String TOP_K_ROOM_PRICE_SQL =
+      "SELECT B.price, B.roomNo, B.hotelID FROM BookingHistory B WHERE B.bookingDate >= ? AND B.bookingDate <= ? ORDER BY B.price DESC LIMIT ?";
+   // the dashboard (AsyncQueries.dashboard): 11 for one hotel
+   static final String HOTEL_TOP_K_ROOM_PRICE_SQL =
+      "SELECT B.price, B.roomNo, B.hotelID FROM BookingHistory B WHERE B.hotelID = ? AND B.bookingDate >= ? AND B.bookingDate <= ? ORDER BY B.price DESC LIMIT ?";
+   static final String TOP_K_CUSTOMER_PRICE_SQL =
+      "SELECT b.price FROM Customer c, BookingHistory b WHERE c.fName = CAST(? AS CHAR(30)) AND c.lName = CAST(? AS CHAR(30)) AND c.customerID = b.customer ORDER BY b.price DESC LIMIT ?";
+   static final String CUSTOMER_TOTAL_COST_SQL =
+      "SELECT SUM(B.price) FROM BookingHistory B WHERE B.bookingDate >= ? AND B.bookingDate <= ? AND B.customer = ?";
+   static final String REPAIRS_BY_COMPANY_SQL =
+      "SELECT rp.rID, rp.hotelID, rp.roomNo, rp.repairType FROM RepairHistory rp, MaintenanceCompany m, Room r WHERE m.name = CAST(? AS CHAR(30)) AND rp.mCompany = m.cmpID AND rp.hotelID = r.hotelID AND rp.roomNo = r.roomNo";
+   // 15 and 16 read the repair counts kept by the trigger in sql/rollups.sql
+   static final String TOP_K_MAINTENANCE_COMPANY_SQL =
+      "SELECT M.name, R.repairs AS count FROM RepairsPerCompany R, MaintenanceCompany M WHERE M.cmpID = R.cmpID AND R.repairs > 0 ORDER BY R.repairs DESC LIMIT ?";
+   static final String REPAIRS_PER_YEAR_SQL =
+      "SELECT R.year AS \"Year\", R.repairs AS count FROM RepairsPerRoomYear R WHERE R.hotelID = ? AND R.roomNo = ? AND R.repairs > 0 ORDER BY R.year";
+   static final String ROOMS_ON_DATE_SQL =
+      "SELECT COALESCE(H.rooms, 0) - N.booked AS available, N.booked AS booked " + ROOMS_OF_NIGHT;
+   // 18 pages through the rooms in key order after the last room shown, an
+   // anti-join on the bookingRoomNightUnique index per room; '' matches any
+   // room type and check-out is exclusive
+   static final String SEARCH_AVAILABLE_ROOMS_SQL =
+      "SELECT r.hotelID, r.roomNo, r.roomType FROM Room r WHERE (r.hotelID, r.roomNo) > (?, ?) AND r.hotelID <= ? AND (CAST(? AS text) = '' OR r.roomType = CAST(? AS CHAR(10))) AND NOT EXISTS (SELECT 1 FROM Booking b WHERE b.hotelID = r.hotelID AND b.roomNo = r.roomNo AND b.bookingDate >= ? AND b.bookingDate < ?) ORDER BY r.hotelID, r.roomNo LIMIT ?";
+
+   // menu queries without a LIMIT whose results are still small (one row,
+   // or the rooms of one hotel or years of one room); they skip the cursor
+   // so they are server prepared like the other cached statements
+   private static final Set<String> BOUNDED_QUERIES = new HashSet<String> (Arrays.asList (
+      ROOM_BOOKED_NIGHTS_SQL, AVAILABLE_ROOMS_SQL, BOOKED_ROOMS_SQL, ROOMS_FREE_FOR_A_WEEK_SQL,
+      CUSTOMER_TOTAL_COST_SQL, REPAIRS_PER_YEAR_SQL, ROOMS_ON_DATE_SQL));
+
    public static void addCustomer(DBProject esql){ //1
 	  // Given customer details add the customer in the DB 
       // Your code goes here.
@@ -271,23 +782,10 @@ public class DBProject {
       String fname;
       String lname;
       String address;
-      int phoneNum;
+      long phoneNum;
       Date dob;
       String gender;
 
-      //get customerID
-      while(true) {
-      System.out.print("Input Customer ID: ");
-         try {
-            customerID = Integer.parseInt(in.readLine());
-            break;
-         }
-         catch(Exception e) {
-            System.out.println("Not a valid Customer ID");
-            System.out.println(e);
-            continue;
-         }
-      }
       //get first name
       while(true) {
       System.out.print("Input First Name: ");
@@ -337,7 +835,7 @@ public class DBProject {
       while(true) {
       System.out.print("Input Phone Number: ");
          try {
-            phoneNum = Integer.parseInt(in.readLine());
+            phoneNum = Long.parseLong(in.readLine());
             break;
          }
          catch(Exception e) {
@@ -350,8 +848,7 @@ public class DBProject {
       while(true) {
          System.out.print("Input DOB: ");
             try {
-               SimpleDateFormat dateFormat = new SimpleDateFormat("mm/dd/yyyy");
-               dob = dateFormat.parse(in.readLine());
+               dob = parseDate(in.readLine());
                break;
             }
             catch(Exception e) {
@@ -377,8 +874,9 @@ public class DBProject {
       }
       //we have all the inputs ... need to insert into query now   
       try {
-         String esqlQuery = "INSERT INTO Customer(customerID, fname, lName, Address, phNo, DOB, gender) VALUES (" + customerID + ", \'"  + fname + "\', \'"  + lname + "\', \'" + address + "\', \'" + phoneNum + "\', \'" + dob + "\', \'" + gender + "\' );";
-         esql.executeUpdate(esqlQuery);
+         customerID = esql.nextId(IdAllocator.CUSTOMER);
+         esql.executeUpdate(ADD_CUSTOMER_SQL, customerID, fname, lname, address, phoneNum, dob, gender);
+         System.out.println("Added customer " + customerID);
       }   
       catch(Exception e) {
          System.err.println(e.getMessage());  
@@ -438,8 +936,7 @@ public class DBProject {
 
 		// insert query
 		try {
-			String esqlQuery = "INSERT INTO Room (hotelID, roomNo, roomType) VALUES (" + hotelID + ", \'" + roomNo + "\', \'" + roomType + "\')";
-			esql.executeUpdate(esqlQuery);
+			esql.executeUpdate(ADD_ROOM_SQL, hotelID, roomNo, roomType);
 		}
 		catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -454,19 +951,6 @@ public class DBProject {
       String address;
       String isCertified;
 
-      //get company id
-      while(true) {
-         System.out.print("Input Company ID: ");
-            try {
-               cmpID = Integer.parseInt(in.readLine());
-               break;
-            }
-            catch(Exception e) {
-               System.out.println("Not a valid Company ID");
-               System.out.println(e);
-               continue;
-            }
-      }
       //get company name
       while(true) {
          System.out.print("Input Company Name: ");
@@ -513,8 +997,9 @@ public class DBProject {
          }
       }
       try {
-         String esqlQuery = "INSERT INTO MaintenanceCompany(cmpID, name, address, isCertified) VALUES (" + cmpID + " , \' " + name + " \' , \' " + address + " \', " + isCertified + " );";
-         esql.executeUpdate(esqlQuery);
+         cmpID = esql.nextId(IdAllocator.MAINTENANCE_COMPANY);
+         esql.executeUpdate(ADD_MAINTENANCE_COMPANY_SQL, cmpID, name, address, Boolean.valueOf(isCertified.equals("TRUE")));
+         System.out.println("Added maintenance company " + cmpID);
       }   
       catch(Exception e) {
          System.err.println(e.getMessage());  
@@ -538,19 +1023,6 @@ public class DBProject {
       String description;
       String repairType;
 		
-		// get rID
-		while(true) {
-			System.out.print("Input repair ID: ");
-			try {
-				rID = Integer.parseInt(in.readLine());
-				break;
-			}
-			catch(Exception e) {
-				System.out.println("Not a valid repair ID");
-				System.out.println(e);
-				continue;
-			}
-		}
 		
 		// get hotelID
 		while(true) {
@@ -598,8 +1070,7 @@ public class DBProject {
 		while(true) {
 			System.out.print("Input repair date: ");
 			try {
-				SimpleDateFormat dateFormat = new SimpleDateFormat("mm/dd/yyyy");
-				repairDate = dateFormat.parse(in.readLine());
+				repairDate = parseDate(in.readLine());
 				break;
 			}
 			catch(Exception e) {
@@ -641,8 +1112,9 @@ public class DBProject {
 
 		// insert query
 		try {
-			String esqlQuery = "INSERT INTO Repair(rID, hotelID, roomNo, mCompany, repairDate, description, repairType) VALUES (" + rID + ", \'" + hotelID + "\', \'" + roomNo + "\', \'" + mCompany + "\', \'" + repairDate + "\', \'" + description + "\', \'" + repairType + "\');";
-			esql.executeUpdate(esqlQuery);
+			rID = esql.nextId(IdAllocator.REPAIR);
+			esql.executeUpdate(ADD_REPAIR_SQL, rID, hotelID, roomNo, mCompany, repairDate, description, repairType);
+			System.out.println("Added repair " + rID);
 		}
 		catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -650,6 +1122,205 @@ public class DBProject {
 
    }//end addRepair
 
+   /**
+    * Outcome of a booking attempt.
+    */
+   enum BookingResult {
+      BOOKED,
+      CONFLICT
+   }
+
+   /**
+    * Books a room for one night.  The insert is a single statement, so it is
+    * its own transaction, and the bookingRoomNightUnique constraint rejects it
+    * if another booking for the same room and night exists or is committed
+    * concurrently.
+    *
+    * @return BOOKED, or CONFLICT when the room is already booked that night
+    * @throws java.sql.SQLException when the booking fails for another reason
+    */
+   public BookingResult reserveRoom (int bID, int customerID, int hotelID, int roomNo,
+                                     Date bookingDate, int noOfPeople, int price) throws SQLException {
+      for (int attempt = 0; ; ++attempt) {
+         try {
+            executeUpdate (BOOK_ROOM_SQL, bID, customerID, hotelID, roomNo, bookingDate, noOfPeople, price);
+            return BookingResult.BOOKED;
+         }catch (SQLException e) {
+            if (isRoomNightConflict (e))
+               return BookingResult.CONFLICT;
+            if (attempt > 0 || !isMissingPartition (e))
+               throw e;
+            ensureBookingPartitions (bookingDate, bookingDate);
+         }
+      }//end for
+   }//end reserveRoom
+
+   /**
+    * Books a room for a stay of several nights in one transaction: one query
+    * checks every night of the stay is free, then one batch inserts a booking
+    * per night.  Either every night is booked or none is; the
+    * bookingRoomNightUnique constraint still rejects the batch if another
+    * client books one of the nights between the check and the insert.
+    *
+    * @param bIDs the booking keys, one per night starting at checkIn
+    * @param checkIn the first night of the stay
+    * @param price the price of each night
+    * @return BOOKED, or CONFLICT when the room is already booked on one of
+    *         the nights
+    * @throws java.sql.SQLException when the booking fails for another reason
+    */
+   public BookingResult reserveStay (int[] bIDs, int customerID, int hotelID, int roomNo,
+                                     Date checkIn, int noOfPeople, int price) throws SQLException {
+      try {
+         return insertStay (bIDs, customerID, hotelID, roomNo, checkIn, noOfPeople, price);
+      }catch (SQLException e) {
+         if (!isMissingPartition (e) && (e.getNextException () == null || !isMissingPartition (e.getNextException ())))
+            throw e;
+      }
+      Calendar c = Calendar.getInstance ();
+      c.setTime (checkIn);
+      c.add (Calendar.DATE, bIDs.length - 1);
+      ensureBookingPartitions (checkIn, c.getTime ());
+      return insertStay (bIDs, customerID, hotelID, roomNo, checkIn, noOfPeople, price);
+   }//end reserveStay
+
+   private BookingResult insertStay (int[] bIDs, int customerID, int hotelID, int roomNo,
+                                     Date checkIn, int noOfPeople, int price) throws SQLException {
+      Calendar c = Calendar.getInstance ();
+      c.setTime (checkIn);
+      Date[] nights = new Date[bIDs.length];
+      for (int i = 0; i < nights.length; ++i) {
+         nights[i] = c.getTime ();
+         c.add (Calendar.DATE, 1);
+      }
+      Date checkOut = c.getTime ();
+
+      Connection conn = this._pool.borrow ();
+      boolean failed = true;
+      try {
+         StatementCache cache = this._pool.getStatementCache (conn);
+         conn.setAutoCommit (false);
+         Object[] params = { hotelID, roomNo, checkIn, checkOut };
+         long start = System.nanoTime ();
+         boolean checked = false;
+         int booked;
+         try {
+            ResultSet rs = cache.prepare (ROOM_BOOKED_NIGHTS_SQL, params).executeQuery ();
+            rs.next ();
+            booked = rs.getInt (1);
+            rs.close ();
+            checked = true;
+         }finally {
+            this._metrics.record (ROOM_BOOKED_NIGHTS_SQL, params, System.nanoTime () - start, 1, !checked);
+         }
+         if (booked > 0) {
+            conn.rollback ();
+            failed = false;
+            return BookingResult.CONFLICT;
+         }
+
+         start = System.nanoTime ();
+         boolean inserted = false;
+         try {
+            PreparedStatement stmt = null;
+            for (int i = 0; i < nights.length; ++i) {
+               params = new Object[] { bIDs[i], customerID, hotelID, roomNo, nights[i], noOfPeople, price };
+               if (stmt == null)
+                  stmt = cache.prepare (BOOK_ROOM_SQL, params);
+               else
+                  StatementCache.bind (stmt, params);
+               stmt.addBatch ();
+            }
+            stmt.executeBatch ();
+            conn.commit ();
+            inserted = true;
+         }catch (SQLException e) {
+            conn.rollback ();
+            if (isRoomNightConflict (e)
+                || e.getNextException () != null && isRoomNightConflict (e.getNextException ())) {
+               failed = false;
+               return BookingResult.CONFLICT;
+            }
+            throw e;
+         }finally {
+            this._metrics.record (BOOK_ROOM_SQL, params, System.nanoTime () - start, nights.length, !inserted);
+         }
+         failed = false;
+         return BookingResult.BOOKED;
+      }finally {
+         this._pool.release (conn, failed);
+      }
+   }//end insertStay
+
+   /**
+    * Moves the bookings, repairs and repair requests dated before a day to
+    * the archive tables in one transaction (archive_history in
+    * sql/archive.sql) and prints what was moved.
+    *
+    * @param before the first day that is kept; bookings move by whole month
+    * @throws java.sql.SQLException when archiving fails, nothing is moved
+    */
+   public void archiveHistory (Date before) throws SQLException {
+      long start = System.nanoTime ();
+      Connection conn = this._pool.borrow ();
+      boolean failed = true;
+      try {
+         ResultSet rs = this._pool.getStatementCache (conn).prepare (ARCHIVE_HISTORY_SQL, before).executeQuery ();
+         rs.next ();
+         System.out.println (String.format ("Archived before %tF: %d months, %d bookings, %d repairs, %d requests (%d ms)",
+            before, rs.getInt (1), rs.getLong (2), rs.getLong (3), rs.getLong (4), (System.nanoTime () - start) / 1000000));
+         rs.close ();
+         failed = false;
+      }finally {
+         this._pool.release (conn, failed);
+      }
+   }//end archiveHistory
+
+   /**
+    * Creates the missing monthly partitions of Booking for the months from
+    * one date to another (ensure_booking_partitions in sql/partitions.sql).
+    * Bookings call it when they fall in a month without a partition and
+    * retry once.
+    *
+    * @return the number of partitions created
+    * @throws java.sql.SQLException when a partition cannot be created
+    */
+   public int ensureBookingPartitions (Date from, Date to) throws SQLException {
+      Connection conn = this._pool.borrow ();
+      boolean failed = true;
+      try {
+         ResultSet rs = this._pool.getStatementCache (conn).prepare (ENSURE_PARTITIONS_SQL, from, to).executeQuery ();
+         rs.next ();
+         int created = rs.getInt (1);
+         rs.close ();
+         failed = false;
+         return created;
+      }finally {
+         this._pool.release (conn, failed);
+      }
+   }//end ensureBookingPartitions
+
+   /*
+    * True if the error is an insert into Booking for a month that has no
+    * partition yet.
+    */
+   static boolean isMissingPartition (SQLException e) {
+      return String.valueOf (e.getMessage ()).toLowerCase ().contains ("no partition of relation");
+   }//end isMissingPartition
+
+   /*
+    * True if the error is a violation of the one-booking-per-room-night
+    * constraint.  Old drivers report no SQLState, so the message is checked
+    * as well.  Booking is partitioned, so the error names the unique index
+    * of the month's partition (booking_pYYYYMM_hotelid_roomno_bookingdate_key)
+    * rather than bookingRoomNightUnique.
+    */
+   static boolean isRoomNightConflict (SQLException e) {
+      String msg = String.valueOf (e.getMessage ()).toLowerCase ();
+      return ("23505".equals (e.getSQLState ()) || msg.contains ("duplicate key"))
+         && (msg.contains ("bookingroomnightunique") || msg.contains ("_hotelid_roomno_bookingdate_key"));
+   }//end isRoomNightConflict
+
    public static void bookRoom(DBProject esql){ //5
 	   	// Given hotelID, roomNo and customer Name create a booking in the DB 
       int hotelID;
@@ -700,8 +1371,7 @@ public class DBProject {
       while(true) {
 			System.out.print("Input Date of Booking: ");
 			try {
-				SimpleDateFormat dateFormat = new SimpleDateFormat("mm/dd/yyyy");
-				bookingDate = dateFormat.parse(in.readLine());
+				bookingDate = parseDate(in.readLine());
 				break;
 			}
 			catch(Exception e) {
@@ -710,82 +1380,46 @@ public class DBProject {
 				continue;
 			}
 		}
-      //book room ... should check if room is open first ... and then if it is open then book
+      int bID;
+      int noOfPeople;
+      int price;
+      //get noOfPeople
+      while(true) {
+         System.out.print("Input Number of People: ");
+         try {
+            noOfPeople = Integer.parseInt(in.readLine());
+            break;
+         }
+         catch(Exception e) {
+            System.out.println("Not a valid Number of People");
+            System.out.println(e);
+            continue;
+         }
+      }
+      //get price? not sure why it is user inputted...lmao
+      while(true) {
+         System.out.print("Input Price: ");
+         try {
+            price = Integer.parseInt(in.readLine());
+            break;
+         }
+         catch(Exception e) {
+            System.out.println("Not a valid Price");
+            System.out.println(e);
+            continue;
+         }
+      }
+      //book room ... the insert itself checks the room is open for that night
       try {
-         String esqlQuery = "SELECT bookingDate, roomNo, hotelID FROM Booking WHERE hotelID =  " + hotelID + "  AND roomNo = " + roomNo + " AND bookingDate = \'" + bookingDate + "\'\n ;";
-         String input;
-         if (esql.executeQuery(esqlQuery) == 0) {
-            while(true) {
-               System.out.println("Room is open, would you like to reserve?");
-               input = in.readLine();
-               if (input.equals("Y")) {
-                  //need new info to put in... bID, etc.
-                  //bookingID
-                  int bID;
-                  int noOfPeople;
-                  int price;
-                  //get bID
-                  while(true) {
-                     System.out.print("Input Booking ID: ");
-                     try {
-                        bID = Integer.parseInt(in.readLine());
-                        break;
-                     }
-                     catch(Exception e) {
-                        System.out.println("Not a valid Booking ID");
-                        System.out.println(e);
-                        continue;
-                     }
-                  }
-                  //get noOfPeople
-                  while(true) {
-                     System.out.print("Input Number of People: ");
-                     try {
-                        noOfPeople = Integer.parseInt(in.readLine());
-                        break;
-                     }
-                     catch(Exception e) {
-                        System.out.println("Not a valid Number of People");
-                        System.out.println(e);
-                        continue;
-                     }
-                  }
-                  //get price? not sure why it is user inputted...lmao
-                  while(true) {
-                     System.out.print("Input Price: ");
-                     try {
-                        price = Integer.parseInt(in.readLine());
-                        break;
-                     }
-                     catch(Exception e) {
-                        System.out.println("Not a valid Price");
-                        System.out.println(e);
-                        continue;
-                     }
-                  }
-                  //insert into Booking
-                  try {
-                     esqlQuery = "INSERT INTO Booking(bID, customer, hotelID, roomNo, bookingDate, noOfPeople, price) VALUES (" + bID + " , " + customerID + " , " + hotelID + ", " + roomNo + ", \' " + bookingDate + " \' , " + noOfPeople + ", " + price + ") "; //FROM FROM Customer C, Room R WHERE " + hotelID + " = " + R.hotelID + " AND " + roomNo + " = " + R.roomNo + " AND " + customerID + " = " + C.customerID + ";
-                     esql.executeUpdate(esqlQuery);
-                     break;
-                  }
-                  catch(Exception e) {
-                     System.err.println(e.getMessage());
-                  }
-               }
-               else if (input.equals("N")) {
-                  System.out.println("Room booking canceled");
-                  break;
-               }
-               else {
-                  System.out.println("Invalid input");
-               }    
-            }
-         } 
+         bID = esql.nextId(IdAllocator.BOOKING);
+         if (esql.reserveRoom(bID, customerID, hotelID, roomNo, bookingDate, noOfPeople, price) == BookingResult.BOOKED)
+            System.out.println("Room booked, booking " + bID);
+         else
+            System.out.println("Room is already booked on that date");
       }
       catch(Exception e) {
          System.out.println(e);
-      }  
+      }
    }//end bookRoom
 
    public static void assignHouseCleaningToRoom(DBProject esql){ //6
@@ -796,19 +1430,6 @@ public class DBProject {
 		int hotelID;
 		int roomNo;
 		
-		// get asgID
-		while(true) {
-			System.out.print("Enter assignment ID: ");
-			try {
-				asgID = Integer.parseInt(in.readLine());
-				break;
-			}
-			catch(Exception e) {
-				System.out.println("Not a valid assignment ID");
-				System.out.println(e);
-				continue;
-			}
-		}
 
 		// get staffID
 		while(true) {
@@ -852,8 +1473,9 @@ public class DBProject {
 
 		// insert query
 		try {
-			String esqlQuery = "INSERT INTO Assigned(asgID, staffID, hotelID, roomNo) VALUES (" + asgID + ", \'" + staffID + "\', \'" + hotelID + "\', \'" + roomNo + "\');";
-			esql.executeUpdate(esqlQuery);
+			asgID = esql.nextId(IdAllocator.ASSIGNED);
+			esql.executeUpdate(ASSIGN_HOUSE_CLEANING_SQL, asgID, staffID, hotelID, roomNo);
+			System.out.println("Added assignment " + asgID);
 		}
 		catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -871,19 +1493,6 @@ public class DBProject {
    Date requestDate;
    String description;
 
-   //get reqID
-   while(true) {
-      System.out.print("Input RequestID: ");
-      try {
-         reqID = Integer.parseInt(in.readLine());
-         break;
-      }
-      catch(Exception e) {
-         System.out.println("Not a valid ReqID");
-         System.out.println(e);
-         continue;
-      }
-   }
    //get SSN
    while(true) {
       System.out.print("Input manger ID: ");
@@ -914,8 +1523,7 @@ public class DBProject {
    while(true) {
       System.out.print("Input Date of Repair: ");
       try {
-         SimpleDateFormat dateFormat = new SimpleDateFormat("mm/dd/yyyy");
-         requestDate = dateFormat.parse(in.readLine());
+         requestDate = parseDate(in.readLine());
          break;
       }
       catch(Exception e) {
@@ -939,8 +1547,9 @@ public class DBProject {
    }
 
   try {
-      String esqlQuery = "INSERT INTO Request(reqID, managerID, repairID, requestDate, description) VALUES( " + reqID + ", " + SSN + ", " + repairID + ",\' " + requestDate + " \', \' " + description + " \');";
-      esql.executeUpdate(esqlQuery);
+      reqID = esql.nextId(IdAllocator.REQUEST);
+      esql.executeUpdate(REPAIR_REQUEST_SQL, reqID, SSN, repairID, requestDate, description);
+      System.out.println("Added request " + reqID);
    }
    catch(Exception e) {
       System.out.println(e);
@@ -949,9 +1558,10 @@ public class DBProject {
    }//end repairRequest
    
    public static void numberOfAvailableRooms(DBProject esql){ //8
-	  // Given a hotelID, get the count of rooms available 
+	  // Given a hotelID and a night (default today), get the count of rooms available
       // Your code goes here.
       int hotelID;
+		Date night;
 
 		// get hotelID
 		while(true) {
@@ -967,10 +1577,11 @@ public class DBProject {
 			}
 		}
 		
+		night = readDateOrToday("Enter date");
+
 		// insert query
 		try {
-			String esqlQuery = "SELECT COUNT(*) FROM Room r WHERE r.hotelID = " + hotelID + " AND r.roomNo NOT IN (SELECT b.roomNo FROM Booking b WHERE b.hotelID = " + hotelID + ");";
-			esql.executeQuery(esqlQuery);
+			esql.executeQuery(AVAILABLE_ROOMS_SQL, night, hotelID);
 		}
 		catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -979,10 +1590,11 @@ public class DBProject {
    }//end numberOfAvailableRooms
    
    public static void numberOfBookedRooms(DBProject esql){ //9
-	  // Given a hotelID, get the count of rooms booked
+	  // Given a hotelID and a night (default today), get the count of rooms booked
 
       // Your code goes here.
       int hotelID;
+		Date night;
 
 		// get hotelID
 		while(true) {
@@ -998,10 +1610,11 @@ public class DBProject {
 			}
 		}
 		
+		night = readDateOrToday("Enter date");
+
 		// insert query
 		try {
-			String esqlQuery = "SELECT COUNT(*) FROM Room r WHERE r.hotelID = " + hotelID + " AND r.roomNo IN (SELECT b.roomNo FROM Booking b WHERE b.hotelID = " + hotelID + ");";
-			esql.executeQuery(esqlQuery);
+			esql.executeQuery(BOOKED_ROOMS_SQL, night, hotelID);
 		}
 		catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -1014,7 +1627,7 @@ public class DBProject {
       // Your code goes here.
       int hotelID;
 		Date inputDate;
-		String endDate;		
+		Date endDate;
 
 		// get hotelID
 		while(true) {
@@ -1034,13 +1647,12 @@ public class DBProject {
       while(true) {
 			System.out.print("Enter input date: ");
 			try {
-				SimpleDateFormat dateFormat = new SimpleDateFormat("mm/dd/yyyy");
-				inputDate = dateFormat.parse(in.readLine());
+				inputDate = parseDate(in.readLine());
 				
 				Calendar c = Calendar.getInstance();
 				c.setTime(inputDate);
 				c.add(Calendar.DATE, 7);
-				endDate = dateFormat.format(c.getTime());
+				endDate = c.getTime();
 				break;
 			}
 			catch(Exception e) {
@@ -1052,8 +1664,7 @@ public class DBProject {
 
 		// insert query
 		try {
-			String esqlQuery = "SELECT r.hotelID, r.roomNo, r.roomType FROM Room r WHERE r.hotelID = '" + hotelID + "' AND r.roomNo NOT IN (SELECT b.roomNo FROM Booking b WHERE b.hotelID = '" + hotelID + "' AND b.bookingDate >= '" + inputDate + "' AND b.bookingDate <= '" + endDate + "');";
-			esql.executeQuery(esqlQuery);
+			esql.executeQuery(ROOMS_FREE_FOR_A_WEEK_SQL, hotelID, hotelID, inputDate, endDate);
 		}
 		catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -1071,8 +1682,7 @@ public class DBProject {
       while(true) {
          System.out.print("Input Start Serch Date: ");
          try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("mm/dd/yyyy");
-            date1 = dateFormat.parse(in.readLine());
+            date1 = parseDate(in.readLine());
             break;
          }
          catch(Exception e) {
@@ -1086,8 +1696,7 @@ public class DBProject {
       while(true) { 
          System.out.print("Input End Search Date: ");
          try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("mm/dd/yyyy");
-            date2 = dateFormat.parse(in.readLine());
+            date2 = parseDate(in.readLine());
             break;
          }
          catch(Exception e) {
@@ -1110,8 +1719,7 @@ public class DBProject {
          }
       }
       try {
-         String esqlQuery = "SELECT B.price, B.roomNo, B.hotelID FROM Booking B WHERE B.bookingDate >= '" + date1 + "' AND B.bookingDate <= '" + date2 + "' ORDER BY B.price DESC LIMIT '" + num + "';";
-         esql.executeQuery(esqlQuery);
+         esql.executeQuery(TOP_K_ROOM_PRICE_SQL, date1, date2, num);
       }
       catch(Exception e) {
          System.out.println(e);
@@ -1175,8 +1783,7 @@ public class DBProject {
 
 		// insert query
 		try {
-			String esqlQuery = "SELECT b.price FROM Customer c, Booking b WHERE c.fName = '" + fName + "' AND c.lName = '" + lName + "' AND c.customerID = b.customer ORDER BY b.price DESC LIMIT '" + K + "';";
-			esql.executeQuery(esqlQuery);
+			esql.executeQuery(TOP_K_CUSTOMER_PRICE_SQL, fName, lName, K);
 		}
 		catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -1209,8 +1816,7 @@ public class DBProject {
       while(true) {
          System.out.print("Input Start Serch Date: ");
          try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("mm/dd/yyyy");
-            date1 = dateFormat.parse(in.readLine());
+            date1 = parseDate(in.readLine());
             break;
          }
          catch(Exception e) {
@@ -1224,8 +1830,7 @@ public class DBProject {
       while(true) { 
          System.out.print("Input End Search Date: ");
          try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("mm/dd/yyyy");
-            date2 = dateFormat.parse(in.readLine());
+            date2 = parseDate(in.readLine());
             break;
          }
          catch(Exception e) {
@@ -1236,8 +1841,7 @@ public class DBProject {
       }
 
       try{
-         String esqlQuery = "SELECT SUM(B.price) FROM Booking B WHERE B.bookingDate >= '" + date1 + "' AND B.bookingDate <= '" + date2 + "' AND B.customer = '" + customerID + "';";
-         esql.executeQuery(esqlQuery);
+         esql.executeQuery(CUSTOMER_TOTAL_COST_SQL, date1, date2, customerID);
       }
       catch(Exception e) {
          System.out.println(e);
@@ -1267,8 +1871,7 @@ public class DBProject {
 
 		// insert query
 		try {
-			String esqlQuery = "SELECT rp.rID, rp.hotelID, rp.roomNo, rp.repairType FROM Repair rp, MaintenanceCompany m, Room r WHERE m.name = '" + name + "' AND rp.hotelID = r.hotelID AND rp.roomNo = r.roomNo;";
-			esql.executeQuery(esqlQuery);
+			esql.executeQuery(REPAIRS_BY_COMPANY_SQL, name);
 		}
 		catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -1295,8 +1898,7 @@ public class DBProject {
 
       try {
          // String esqlQuery = "SELECT M.name FROM MaintenanceCompany M, Repair R WHERE R.mCompany = M.cmpID ORDER BY (SELECT R1.mCompany, COUNT(*) as c FROM Repair R1, MaintenanceCompany M2 WHERE M2.cmpID = R1.mCompany) DESC LIMIT '" + num + "';";
-         String esqlQuery = "SELECT M.name, COUNT(*) FROM MaintenanceCompany M, Repair R WHERE M.cmpID = R.mCompany GROUP BY M.name ORDER BY COUNT(*) DESC LIMIT '" + num + "';";
-         esql.executeQuery(esqlQuery);
+         esql.executeQuery(TOP_K_MAINTENANCE_COMPANY_SQL, num);
       }
       catch(Exception e) {
          System.out.println(e);
@@ -1339,8 +1941,7 @@ public class DBProject {
 
 		// insert query
 		try {
-			String esqlQuery = "SELECT EXTRACT (year from r.repairDate) as \"Year\", COUNT(r.rID) FROM Repair r GROUP BY \"Year\" ORDER BY COUNT ASC;";
-			esql.executeQuery(esqlQuery);
+			esql.executeQuery(REPAIRS_PER_YEAR_SQL, hotelID, roomNo);
 		}
 		catch(Exception e) {
 			System.err.println(e.getMessage());
@@ -1348,4 +1949,287 @@ public class DBProject {
 
    }//end listRepairsMade
 
+   public static void roomsOnDate(DBProject esql){ //17
+	  // Given a hotelID, date - get the count of rooms available and booked on that night
+      int hotelID;
+		Date night;
+
+		// get hotelID
+		while(true) {
+			System.out.print("Enter hotel ID: ");
+			try {
+				hotelID = Integer.parseInt(in.readLine());
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid hotel ID");
+				System.out.println(e);
+				continue;
+			}
+		}
+
+		// get date
+		while(true) {
+			System.out.print("Enter date: ");
+			try {
+				night = parseDate(in.readLine());
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid date");
+				System.out.println(e);
+				continue;
+			}
+		}
+
+		// insert query
+		try {
+			esql.executeQuery(ROOMS_ON_DATE_SQL, night, hotelID);
+		}
+		catch(Exception e) {
+			System.err.println(e.getMessage());
+		}
+
+   }//end roomsOnDate
+
+   public static void searchAvailableRooms(DBProject esql){ //18
+	  // Given a hotelID (0 for all), check-in and check-out date, room type - list the rooms free
+	  // every night of the stay, a page at a time
+      int hotelID;
+		Date checkIn;
+		Date checkOut;
+		String roomType;
+		int pageSize;
+
+		// get hotelID
+		while(true) {
+			System.out.print("Enter hotel ID (0 for all hotels): ");
+			try {
+				hotelID = Integer.parseInt(in.readLine());
+				if (hotelID < 0) {
+					throw new RuntimeException("Hotel ID cannot be negative");
+				}
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid hotel ID");
+				System.out.println(e);
+				continue;
+			}
+		}
+
+		// get check-in date
+		while(true) {
+			System.out.print("Enter check-in date: ");
+			try {
+				checkIn = parseDate(in.readLine());
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid date");
+				System.out.println(e);
+				continue;
+			}
+		}
+
+		// get check-out date
+		while(true) {
+			System.out.print("Enter check-out date: ");
+			try {
+				checkOut = parseDate(in.readLine());
+				if (!checkOut.after(checkIn)) {
+					throw new RuntimeException("Check-out must be after check-in");
+				}
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid check-out date");
+				System.out.println(e);
+				continue;
+			}
+		}
+
+		// get room type
+		while(true) {
+			System.out.print("Enter room type (empty for any): ");
+			try {
+				roomType = in.readLine().trim();
+				if (roomType.length() > 10) {
+					throw new RuntimeException("Room type is at most 10 characters");
+				}
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid room type");
+				System.out.println(e);
+				continue;
+			}
+		}
+
+		// get page size
+		while(true) {
+			System.out.print("Enter number of rooms per page: ");
+			try {
+				pageSize = Integer.parseInt(in.readLine());
+				if (pageSize <= 0) {
+					throw new RuntimeException("Number of rooms must be positive");
+				}
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid number of rooms");
+				System.out.println(e);
+				continue;
+			}
+		}
+
+		// each page starts after the last room of the previous one
+		try {
+			long afterHotel = hotelID == 0 ? 1 : hotelID;
+			long afterRoom = -1;
+			long lastHotel = hotelID == 0 ? Integer.MAX_VALUE : hotelID;
+			while (true) {
+				ResultSink sink = ResultSink.create(esql._format, out);
+				QueryStats stats = esql.executeQuery(sink, SEARCH_AVAILABLE_ROOMS_SQL, afterHotel, afterRoom, lastHotel,
+				                                     roomType, roomType, checkIn, checkOut, pageSize);
+				System.out.println(stats);
+				if (stats.rows < pageSize) {
+					break;
+				}
+				System.out.print("Show next page? (y/n): ");
+				String answer = in.readLine();
+				if (answer == null || !answer.trim().equalsIgnoreCase("y")) {
+					break;
+				}
+				String[] last = sink.getLastRow();
+				afterHotel = Long.parseLong(last[0]);
+				afterRoom = Long.parseLong(last[1]);
+			}
+		}
+		catch(Exception e) {
+			System.err.println(e.getMessage());
+		}
+
+   }//end searchAvailableRooms
+
+   public static void bookStay(DBProject esql){ //19
+	   	// Given hotelID, roomNo, customer, check-in date and number of nights book every night of the stay
+      int hotelID;
+      int roomNo;
+      int customerID;
+      Date checkIn;
+      int nights;
+      int noOfPeople;
+      int price;
+
+      //get hotelID
+      while(true) {
+			System.out.print("Input Hotel ID: ");
+			try {
+				hotelID = Integer.parseInt(in.readLine());
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid Hotel ID");
+				System.out.println(e);
+				continue;
+			}
+      }
+      //get roomNo
+      while(true) {
+			System.out.print("Input Room Number: ");
+			try {
+				roomNo = Integer.parseInt(in.readLine());
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid Room Number");
+				System.out.println(e);
+				continue;
+			}
+      }
+      //get customer
+      while(true) {
+			System.out.print("Input Customer ID: ");
+			try {
+				customerID = Integer.parseInt(in.readLine());
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid Customer ID");
+				System.out.println(e);
+				continue;
+			}
+      }
+      //get check-in date
+      while(true) {
+			System.out.print("Input Check-in Date: ");
+			try {
+				checkIn = parseDate(in.readLine());
+				break;
+			}
+			catch(Exception e) {
+				System.out.println("Not a valid date");
+				System.out.println(e);
+				continue;
+			}
+		}
+      //get number of nights
+      while(true) {
+         System.out.print("Input Number of Nights: ");
+         try {
+            nights = Integer.parseInt(in.readLine());
+            if (nights <= 0 || nights > 365) {
+               throw new RuntimeException("Number of nights must be between 1 and 365");
+            }
+            break;
+         }
+         catch(Exception e) {
+            System.out.println("Not a valid Number of Nights");
+            System.out.println(e);
+            continue;
+         }
+      }
+      //get noOfPeople
+      while(true) {
+         System.out.print("Input Number of People: ");
+         try {
+            noOfPeople = Integer.parseInt(in.readLine());
+            break;
+         }
+         catch(Exception e) {
+            System.out.println("Not a valid Number of People");
+            System.out.println(e);
+            continue;
+         }
+      }
+      //get price per night
+      while(true) {
+         System.out.print("Input Price per Night: ");
+         try {
+            price = Integer.parseInt(in.readLine());
+            break;
+         }
+         catch(Exception e) {
+            System.out.println("Not a valid Price");
+            System.out.println(e);
+            continue;
+         }
+      }
+      //book every night of the stay or none
+      try {
+         int[] bIDs = new int[nights];
+         for (int i = 0; i < nights; ++i) {
+            bIDs[i] = esql.nextId(IdAllocator.BOOKING);
+         }
+         if (esql.reserveStay(bIDs, customerID, hotelID, roomNo, checkIn, noOfPeople, price) == BookingResult.BOOKED)
+            System.out.println("Stay booked, " + nights + (nights == 1 ? " night" : " nights") + ", bookings " + bIDs[0] + " to " + bIDs[nights - 1]);
+         else
+            System.out.println("Room is already booked on one of those nights");
+      }
+      catch(Exception e) {
+         System.out.println(e);
+      }
+   }//end bookStay
+
 }//end DBProject
@@ -0,0 +1,468 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a synthetic Phase3 data set of any size in the format of data/*.csv,
+ * so it can be read by create.sql or the load mode of DBProject.
+ *
+ * The data follows the rules create.sql relies on:
+ *    - every file starts with the 0 "default" row of the shipped data,
+ *    - staff 1..hotels are the managers of hotels 1..hotels, one per hotel,
+ *      the other staff alternate between Receptionist and HouseCleaning,
+ *    - every foreign key names an existing row and cleaners are only assigned
+ *      to rooms of the hotel they work for,
+ *    - no room is booked twice for the same night.
+ *
+ * Each table is cut into chunks of CHUNK rows that are written in parallel to
+ * part files and then joined, so no table is held in memory.  Every value is
+ * derived from the seed, the table and the row number alone, which makes the
+ * output the same for a given seed no matter how many threads are used.
+ */
+public class DataGenerator {
+
+   // rows per part file
+   private static final int CHUNK = Integer.getInteger ("dbproject.gen.chunk", 1 << 20);
+
+   // part files written at once
+   private static final int THREADS =
+      Integer.getInteger ("dbproject.gen.threads", Runtime.getRuntime ().availableProcessors ());
+
+   // booking, repair and request dates fall in [FIRST_YEAR, LAST_YEAR]
+   private static final int FIRST_YEAR = 2000;
+   private static final int LAST_YEAR = 2018;
+
+   private static final String[] ROOM_TYPES = { "Suite", "Economy", "Deluxe" };
+   private static final String[] GENDERS = { "Male", "Female", "Other" };
+   private static final String[] REPAIR_TYPES = { "Small", "Medium", "Large" };
+
+   // dates as written in the data files (M/d/yyyy), one per day
+   private static final String[] DAYS = days (FIRST_YEAR, LAST_YEAR);
+   private static final String[] BIRTHDAYS = days (1900, 1999);
+
+   // table numbers, mixed into the seed of every row
+   private static final int HOTEL = 1, STAFF = 2, ROOM = 3, CUSTOMER = 4, COMPANY = 5,
+      BOOKING = 6, REPAIR = 7, REQUEST = 8, ASSIGNED = 9;
+
+   private final File _dir;
+   private final long _seed;
+
+   // row counts; staff counts the managers, rooms are per hotel
+   long hotels = 1000;
+   long staff = 5000;
+   int roomsPerHotel = 10;
+   long customers = 2000;
+   long companies = 20;
+   long bookings = 4000;
+   long repairs = 2000;
+   long requests = 2000;
+   long assigned = 2000;
+
+   // bookings are a permutation of the room nights: row i is room night
+   // (i * _stride + _offset) mod _nights
+   private long _nights;
+   private long _stride;
+   private long _offset;
+
+   public DataGenerator (File dir, long seed) {
+      this._dir = dir;
+      this._seed = seed;
+   }//end DataGenerator
+
+   /**
+    * Multiplies every row count of the shipped data set (1000 hotels, 4000
+    * bookings, ...) by the factor.  Rooms per hotel stay at 10.
+    *
+    * @param factor the scale, 1 for the size of data/
+    */
+   public void scale (double factor) {
+      hotels = Math.max (1L, Math.round (hotels * factor));
+      staff = Math.max (hotels + 2, Math.round (staff * factor));
+      customers = Math.max (1L, Math.round (customers * factor));
+      companies = Math.max (1L, Math.round (companies * factor));
+      bookings = Math.round (bookings * factor);
+      repairs = Math.max (1L, Math.round (repairs * factor));
+      requests = Math.round (requests * factor);
+      assigned = Math.round (assigned * factor);
+   }//end scale
+
+   /**
+    * Overrides one row count, e.g. "bookings=10000000".
+    *
+    * @param setting the count name and value separated by '='
+    */
+   public void set (String setting) {
+      int eq = setting.indexOf ('=');
+      if (eq < 0)
+         throw new IllegalArgumentException ("Expected <name>=<count>: " + setting);
+      String name = setting.substring (0, eq);
+      long value = Long.parseLong (setting.substring (eq + 1));
+      if (name.equals ("hotels")) hotels = value;
+      else if (name.equals ("staff")) staff = value;
+      else if (name.equals ("roomsPerHotel")) roomsPerHotel = (int) value;
+      else if (name.equals ("customers")) customers = value;
+      else if (name.equals ("companies")) companies = value;
+      else if (name.equals ("bookings")) bookings = value;
+      else if (name.equals ("repairs")) repairs = value;
+      else if (name.equals ("requests")) requests = value;
+      else if (name.equals ("assigned")) assigned = value;
+      else throw new IllegalArgumentException ("Unknown row count: " + name);
+   }//end set
+
+   /**
+    * Writes all nine files into the output directory.
+    *
+    * @throws java.lang.Exception when the counts are inconsistent or a file
+    *         cannot be written
+    */
+   public void generate () throws Exception {
+      check ();
+      _dir.mkdirs ();
+      _nights = hotels * roomsPerHotel * DAYS.length;
+      _stride = stride (_nights, _seed);
+      _offset = Math.abs (mix (_seed, 0, 0) % _nights);
+
+      long start = System.nanoTime ();
+      List<Part> parts = new ArrayList<Part> ();
+      parts.addAll (parts (HOTEL, BulkLoader.HOTEL.file, hotels, "0,default,\\N"));
+      parts.addAll (parts (STAFF, BulkLoader.STAFF.file, staff, "0,default,default,default,Manager,0"));
+      parts.addAll (parts (ROOM, BulkLoader.ROOM.file, hotels * roomsPerHotel, "0,0,default"));
+      parts.addAll (parts (CUSTOMER, BulkLoader.CUSTOMER.file, customers, "0,default,default,default,0,1/1/2000,Male"));
+      parts.addAll (parts (COMPANY, BulkLoader.MAINTENANCE_COMPANY.file, companies, "0,default,default,TRUE"));
+      parts.addAll (parts (BOOKING, BulkLoader.BOOKING.file, bookings, "0,0,0,0,1/1/2000,0,0"));
+      parts.addAll (parts (REPAIR, BulkLoader.REPAIR.file, repairs, "0,0,0,0,1/1/2000,default,Small"));
+      parts.addAll (parts (REQUEST, BulkLoader.REQUEST.file, requests, "0,0,0,1/1/2000,default"));
+      parts.addAll (parts (ASSIGNED, BulkLoader.ASSIGNED.file, assigned, "0,0,0,0"));
+
+      ExecutorService pool = Executors.newFixedThreadPool (Math.max (1, THREADS));
+      try {
+         List<Future<Object>> results = new ArrayList<Future<Object>> ();
+         for (Part p : parts)
+            results.add (pool.submit (p, null));
+         for (Future<Object> f : results)
+            f.get ();
+      }finally {
+         pool.shutdownNow ();
+      }
+      join (parts);
+
+      System.out.println (String.format (
+         "Wrote %d hotels, %d staff, %d rooms, %d customers, %d companies, %d bookings, "
+         + "%d repairs, %d requests, %d assignments to %s in %.1f s",
+         hotels, staff, hotels * roomsPerHotel, customers, companies, bookings,
+         repairs, requests, assigned, _dir, (System.nanoTime () - start) / 1e9));
+   }//end generate
+
+   private void check () {
+      if (hotels < 1 || roomsPerHotel < 1 || customers < 1 || companies < 1 || repairs < 1)
+         throw new IllegalArgumentException ("hotels, roomsPerHotel, customers, companies and repairs must be positive");
+      if (staff < hotels + 2)
+         throw new IllegalArgumentException ("staff must be at least hotels + 2 (one manager per hotel, "
+                                             + "one receptionist and one cleaner)");
+      long nights = hotels * roomsPerHotel * DAYS.length;
+      if (bookings > nights)
+         throw new IllegalArgumentException ("Only " + nights + " room nights for " + bookings + " bookings");
+      // the booking permutation multiplies a row number by a room night
+      if (bookings > 0 && nights > Long.MAX_VALUE / bookings)
+         throw new IllegalArgumentException ("Too many room nights, use fewer hotels or rooms");
+      if (hotels > Integer.MAX_VALUE || staff > Integer.MAX_VALUE || customers > Integer.MAX_VALUE
+          || bookings > Integer.MAX_VALUE || repairs > Integer.MAX_VALUE || requests > Integer.MAX_VALUE
+          || assigned > Integer.MAX_VALUE)
+         throw new IllegalArgumentException ("Row counts must fit the int keys");
+   }//end check
+
+   /**
+    * One chunk of one table, written to its own part file.
+    */
+   private class Part implements Runnable {
+      final int table;
+      final String file;
+      final String header;
+      final long from;
+      final long to;
+      final File tmp;
+
+      Part (int table, String file, String header, long from, long to, int index) {
+         this.table = table;
+         this.file = file;
+         this.header = header;
+         this.from = from;
+         this.to = to;
+         this.tmp = new File (_dir, file + ".part" + index);
+      }
+
+      public void run () {
+         try {
+            Writer out = new BufferedWriter (new OutputStreamWriter (new FileOutputStream (tmp), "US-ASCII"), 1 << 16);
+            try {
+               StringBuilder line = new StringBuilder (128);
+               Rows rows = new Rows ();
+               if (header != null)
+                  out.append (header).append ('\n');
+               for (long id = from; id <= to; ++id) {
+                  line.setLength (0);
+                  rows.write (table, id, line);
+                  out.append (line).append ('\n');
+               }
+            }finally {
+               out.close ();
+            }
+         }catch (IOException e) {
+            throw new RuntimeException ("Cannot write " + tmp, e);
+         }
+      }
+   }//end Part
+
+   private List<Part> parts (int table, String file, long rows, String header) {
+      List<Part> result = new ArrayList<Part> ();
+      int index = 0;
+      for (long from = 1; from <= rows || index == 0; from += CHUNK) {
+         long to = Math.min (rows, from + CHUNK - 1);
+         result.add (new Part (table, file, index == 0 ? header : null, from, to, index));
+         ++index;
+      }
+      return result;
+   }//end parts
+
+   /*
+    * Concatenates the part files of every table in order and removes them.
+    */
+   private void join (List<Part> parts) throws IOException {
+      FileChannel target = null;
+      String current = null;
+      try {
+         for (Part p : parts) {
+            if (!p.file.equals (current)) {
+               if (target != null)
+                  target.close ();
+               target = new FileOutputStream (new File (_dir, p.file)).getChannel ();
+               current = p.file;
+            }
+            FileChannel source = new FileInputStream (p.tmp).getChannel ();
+            try {
+               long size = source.size ();
+               for (long done = 0; done < size; )
+                  done += source.transferTo (done, size - done, target);
+            }finally {
+               source.close ();
+            }
+            if (!p.tmp.delete ())
+               throw new IOException ("Cannot remove " + p.tmp);
+         }
+      }finally {
+         if (target != null)
+            target.close ();
+      }
+   }//end join
+
+   /**
+    * Writes the row with a given key of a table.  The random values of a row
+    * come from a generator seeded with the table and the key only.
+    */
+   private class Rows {
+      private long _state;
+
+      void write (int table, long id, StringBuilder line) {
+         _state = mix (_seed, table, id);
+         switch (table) {
+            case HOTEL:
+               line.append (id).append (',');
+               letters (line, 6);
+               line.append (",\\N");
+               break;
+            case STAFF:
+               line.append (id).append (',');
+               letters (line, 4);
+               line.append (',');
+               letters (line, 4);
+               line.append (',');
+               letters (line, 6);
+               if (id <= hotels) {
+                  line.append (",Manager,").append (id);
+               }else {
+                  long other = id - hotels - 1;
+                  line.append (other % 2 == 0 ? ",Receptionist," : ",HouseCleaning,")
+                     .append (employer (id));
+               }
+               break;
+            case ROOM:
+               line.append ((id - 1) / roomsPerHotel + 1).append (',')
+                  .append ((id - 1) % roomsPerHotel + 1).append (',')
+                  .append (ROOM_TYPES[next (ROOM_TYPES.length)]);
+               break;
+            case CUSTOMER:
+               line.append (id).append (',');
+               letters (line, 4);
+               line.append (',');
+               letters (line, 4);
+               line.append (',');
+               letters (line, 6);
+               line.append (',').append (1000000000L + nextLong (9000000000L))
+                  .append (',').append (BIRTHDAYS[next (BIRTHDAYS.length)])
+                  .append (',').append (GENDERS[next (GENDERS.length)]);
+               break;
+            case COMPANY:
+               line.append (id).append (',');
+               letters (line, 4);
+               line.append (',');
+               letters (line, 6);
+               line.append (next (5) == 0 ? ",FALSE" : ",TRUE");
+               break;
+            case BOOKING: {
+               long night = ((id - 1) * _stride + _offset) % _nights;
+               long room = night / DAYS.length;
+               line.append (id).append (',')
+                  .append (1 + nextLong (customers)).append (',')
+                  .append (room / roomsPerHotel + 1).append (',')
+                  .append (room % roomsPerHotel + 1).append (',')
+                  .append (DAYS[(int) (night % DAYS.length)]).append (',')
+                  .append (1 + next (3)).append (',')
+                  .append (500 + next (1500));
+               break;
+            }
+            case REPAIR:
+               // the same first draw as repairHotel (id)
+               line.append (id).append (',')
+                  .append (1 + nextLong (hotels)).append (',')
+                  .append (1 + next (roomsPerHotel)).append (',')
+                  .append (1 + nextLong (companies)).append (',')
+                  .append (DAYS[next (DAYS.length)]).append (',');
+               letters (line, 4);
+               line.append (',').append (REPAIR_TYPES[next (REPAIR_TYPES.length)]);
+               break;
+            case REQUEST: {
+               long repair = 1 + nextLong (repairs);
+               String date = DAYS[next (DAYS.length)];
+               StringBuilder description = new StringBuilder (4);
+               letters (description, 4);
+               // the manager of the repaired hotel raises the request
+               line.append (id).append (',')
+                  .append (repairHotel (repair)).append (',')
+                  .append (repair).append (',')
+                  .append (date).append (',')
+                  .append (description);
+               break;
+            }
+            case ASSIGNED: {
+               long cleaners = (staff - hotels) / 2;
+               long cleaner = hotels + 2 + 2 * nextLong (cleaners);
+               line.append (id).append (',')
+                  .append (cleaner).append (',')
+                  .append (employer (cleaner)).append (',')
+                  .append (1 + next (roomsPerHotel));
+               break;
+            }
+            default:
+               throw new IllegalStateException ("Unknown table " + table);
+         }//end switch
+      }//end write
+
+      /*
+       * The hotel of a repair, also needed to find the manager of a request.
+       * Always the first value drawn for the repair row.
+       */
+      private long repairHotel (long repair) {
+         _state = mix (_seed, REPAIR, repair);
+         return 1 + nextLong (hotels);
+      }
+
+      private void letters (StringBuilder sb, int n) {
+         for (int i = 0; i < n; ++i)
+            sb.append ((char) ('a' + next (26)));
+      }
+
+      private int next (int bound) {
+         return (int) nextLong (bound);
+      }
+
+      private long nextLong (long bound) {
+         _state += 0x9E3779B97F4A7C15L;
+         long z = _state;
+         z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+         z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+         z = z ^ (z >>> 31);
+         return (z >>> 1) % bound;
+      }
+   }//end Rows
+
+   /*
+    * Staff other than the managers work for the hotels in turn, a
+    * receptionist and a cleaner each round.
+    */
+   private long employer (long ssn) {
+      return (ssn - hotels - 1) / 2 % hotels + 1;
+   }//end employer
+
+   private static long mix (long seed, int table, long id) {
+      long z = seed * 0x9E3779B97F4A7C15L + table * 0xC2B2AE3D27D4EB4FL + id * 0x165667B19E3779F9L;
+      z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+      z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+      return z ^ (z >>> 33);
+   }//end mix
+
+   /*
+    * A step coprime with n, so that i * step mod n visits every room night
+    * once.  Chosen near n / golden ratio to spread neighbouring bookings.
+    */
+   private static long stride (long n, long seed) {
+      if (n == 1)
+         return 1;
+      long step = (long) (n * 0.6180339887) + Math.abs (seed % 1000) + 1;
+      while (gcd (step % n, n) != 1)
+         ++step;
+      return step % n;
+   }//end stride
+
+   private static long gcd (long a, long b) {
+      while (b != 0) {
+         long t = a % b;
+         a = b;
+         b = t;
+      }
+      return a;
+   }//end gcd
+
+   private static String[] days (int firstYear, int lastYear) {
+      List<String> days = new ArrayList<String> ();
+      Calendar c = new GregorianCalendar (firstYear, Calendar.JANUARY, 1);
+      while (c.get (Calendar.YEAR) <= lastYear) {
+         days.add ((c.get (Calendar.MONTH) + 1) + "/" + c.get (Calendar.DAY_OF_MONTH) + "/" + c.get (Calendar.YEAR));
+         c.add (Calendar.DATE, 1);
+      }
+      return days.toArray (new String[days.size ()]);
+   }//end days
+
+   /**
+    * @param args &lt;outDir&gt; [&lt;scale&gt; [&lt;seed&gt; [&lt;name&gt;=&lt;count&gt; ...]]]
+    */
+   public static void main (String[] args) throws Exception {
+      if (args.length < 1) {
+         System.err.println (
+            "Usage: java " + DataGenerator.class.getName () + " <outDir> [<scale> [<seed> [<name>=<count> ...]]]\n" +
+            "  scale   multiplies the row counts of the shipped data (default 1)\n" +
+            "  seed    the same seed writes the same files (default 166)\n" +
+            "  counts  hotels, staff, roomsPerHotel, customers, companies, bookings, repairs,\n" +
+            "          requests, assigned, e.g. bookings=10000000");
+         return;
+      }
+      DataGenerator gen = new DataGenerator (new File (args[0]), args.length > 2 ? Long.parseLong (args[2]) : 166L);
+      if (args.length > 1)
+         gen.scale (Double.parseDouble (args[1]));
+      for (int i = 3; i < args.length; ++i)
+         gen.set (args[i]);
+      gen.generate ();
+   }//end main
+
+}//end DataGenerator
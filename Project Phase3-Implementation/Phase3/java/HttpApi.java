@@ -0,0 +1,457 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the menu operations (see {@link Operations}) as JSON endpoints over
+ * HTTP, with the JDK's built-in server:
+ *
+ *    GET  /api/                      the operations and their inputs
+ *    GET  /api/&lt;operation&gt;?&lt;input&gt;=..  a query, e.g. /api/numberOfAvailableRooms?hotelID=5
+ *    POST /api/&lt;operation&gt;            a query or a write, inputs in a JSON object
+ *    GET  /api/stats                 request counts and latency per endpoint,
+ *                                    and the admission queues
+ *
+ * Inputs are named as in the operation's usage and may also be given in
+ * the query string of a POST; dates are MM/dd/yyyy or yyyy-MM-dd.  A query
+ * answers {"rows": [{column: value, ...}, ...]}, a write answers its one row
+ * (e.g. {"customerID": "2001"}).  Values are JSON strings, null for SQL
+ * NULL.  Errors answer {"error": message} with status 400 for bad inputs,
+ * 404 for an unknown operation, 405 for a write sent as GET, 409 when a
+ * booking finds the room taken or a row conflicts with another, 503 with
+ * Retry-After when the operation's class is overloaded (see
+ * {@link AdmissionControl}), and 500 otherwise.
+ *
+ * Every request runs on its own virtual thread when the JVM has them (see
+ * {@link Threads}), otherwise on a fixed pool of platform threads.  Requests
+ * wait for a database connection from the bounded pool, so any number of
+ * them can be in flight while only dbproject.pool.max statements run.
+ */
+public class HttpApi {
+
+   // address the server binds; loopback unless the website runs elsewhere
+   private static final String HOST = System.getProperty ("dbproject.http.host", "127.0.0.1");
+
+   // connections the operating system queues before they are accepted
+   private static final int BACKLOG = Integer.getInteger ("dbproject.http.backlog", 1024);
+
+   // request threads when there are no virtual threads
+   private static final int PLATFORM_THREADS = Integer.getInteger ("dbproject.http.threads", 200);
+
+   // largest request body accepted
+   private static final int MAX_BODY = 64 * 1024;
+
+   private static final String PREFIX = "/api/";
+
+   private final DBProject _esql;
+   private final int _port;
+
+   /**
+    * Request counts and latency of one endpoint.
+    */
+   static class Endpoint {
+      final LatencyHistogram latency = new LatencyHistogram ();
+      final AtomicLong clientErrors = new AtomicLong ();
+      final AtomicLong serverErrors = new AtomicLong ();
+   }//end Endpoint
+
+   private final ConcurrentHashMap<String, Endpoint> _endpoints = new ConcurrentHashMap<String, Endpoint> ();
+
+   public HttpApi (DBProject esql, int port) {
+      this._esql = esql;
+      this._port = port;
+   }//end HttpApi
+
+   /**
+    * Serves requests until the process is stopped.
+    *
+    * @throws java.io.IOException when the port cannot be bound
+    * @throws java.lang.InterruptedException when the waiting thread is
+    *         interrupted
+    */
+   public void serve () throws IOException, InterruptedException {
+      HttpServer server = HttpServer.create (new InetSocketAddress (HOST, this._port), BACKLOG);
+      server.createContext (PREFIX, new HttpHandler () {
+         public void handle (HttpExchange exchange) throws IOException {
+            try {
+               HttpApi.this.handle (exchange);
+            }finally {
+               exchange.close ();
+            }
+         }
+      });
+      server.setExecutor (executor ());
+      server.start ();
+      System.out.println ("Serving the menu operations on http://" + HOST + ":" + server.getAddress ().getPort ()
+         + PREFIX + " (" + (Threads.isVirtual () ? "a virtual thread per request" : PLATFORM_THREADS + " threads")
+         + ", " + this._esql.getPoolMaxSize () + " database connections)");
+      // the server's threads answer the requests, the caller only waits
+      synchronized (this) {
+         while (true)
+            wait ();
+      }
+   }//end serve
+
+   private static Executor executor () {
+      if (!Threads.isVirtual ())
+         return Executors.newFixedThreadPool (PLATFORM_THREADS);
+      final AtomicInteger requests = new AtomicInteger ();
+      return new Executor () {
+         public void execute (Runnable task) {
+            Threads.start ("http-" + requests.incrementAndGet (), task);
+         }
+      };
+   }//end executor
+
+   /*
+    * Answers one request and records it under its endpoint.
+    */
+   private void handle (HttpExchange exchange) throws IOException {
+      long start = System.nanoTime ();
+      String name = exchange.getRequestURI ().getPath ().substring (PREFIX.length ());
+      Operations.Operation op = Operations.get (name);
+      int status;
+      if (op != null)
+         status = operation (exchange, op);
+      else if (name.length () == 0)
+         status = send (exchange, 200, operationsJson ());
+      else if (name.equals ("stats"))
+         status = send (exchange, 200, statsJson ());
+      else
+         status = send (exchange, 404, errorJson ("Unknown operation " + name));
+
+      // operations are counted under their name, the rest under their path
+      String endpoint = op != null ? op.name : status == 404 ? "unknown" : PREFIX + name;
+      Endpoint e = _endpoints.get (endpoint);
+      if (e == null) {
+         Endpoint created = new Endpoint ();
+         e = _endpoints.putIfAbsent (endpoint, created);
+         if (e == null)
+            e = created;
+      }
+      e.latency.record (System.nanoTime () - start);
+      if (status >= 500)
+         e.serverErrors.incrementAndGet ();
+      else if (status >= 400)
+         e.clientErrors.incrementAndGet ();
+   }//end handle
+
+   /*
+    * Runs an operation with the inputs of the request and sends its result.
+    */
+   private int operation (HttpExchange exchange, Operations.Operation op) throws IOException {
+      String method = exchange.getRequestMethod ();
+      if (!method.equals ("POST") && !(method.equals ("GET") && !op.write))
+         return send (exchange, 405, errorJson (op.name + " takes " + (op.write ? "POST" : "GET or POST")));
+
+      String[] args;
+      try {
+         Map<String, String> inputs = new HashMap<String, String> ();
+         parseQuery (exchange.getRequestURI ().getRawQuery (), inputs);
+         if (method.equals ("POST"))
+            parseObject (readBody (exchange), inputs);
+         args = op.arguments (inputs);
+      }catch (IllegalArgumentException e) {
+         return send (exchange, 400, errorJson (e.getMessage ()));
+      }
+
+      StringWriter body = new StringWriter ();
+      JsonRows rows = new JsonRows (body);
+      try {
+         op.run (this._esql, args, rows);
+      }catch (IllegalArgumentException e) {
+         return send (exchange, 400, errorJson (e.getMessage ()));
+      }catch (AdmissionControl.Rejected e) {
+         exchange.getResponseHeaders ().set ("Retry-After", "1");
+         return send (exchange, 503, errorJson (e.getMessage ()));
+      }catch (SQLException e) {
+         // a duplicate key or a missing referenced row is the client's
+         String state = e.getSQLState ();
+         return send (exchange, state != null && state.startsWith ("23") ? 409 : 500, errorJson (e.getMessage ()));
+      }catch (RuntimeException e) {
+         // a bug rather than a bad input; answered so the exchange is not left open
+         return send (exchange, 500, errorJson (e.getMessage () != null ? e.getMessage () : e.toString ()));
+      }
+      if (op.write) {
+         String[] row = rows.getLastRow ();
+         return send (exchange, "CONFLICT".equals (row[0]) ? 409 : 200, body.toString ());
+      }
+      return send (exchange, 200, "{\"rows\":[" + body + "]}");
+   }//end operation
+
+   private static int send (HttpExchange exchange, int status, String json) throws IOException {
+      byte[] bytes = json.getBytes (CommandServer.UTF8);
+      exchange.getResponseHeaders ().set ("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders (status, bytes.length);
+      OutputStream out = exchange.getResponseBody ();
+      out.write (bytes);
+      out.close ();
+      return status;
+   }//end send
+
+   private static String readBody (HttpExchange exchange) throws IOException {
+      InputStream in = exchange.getRequestBody ();
+      ByteArrayOutputStream body = new ByteArrayOutputStream ();
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read (buffer)) > 0) {
+         body.write (buffer, 0, n);
+         if (body.size () > MAX_BODY)
+            throw new IllegalArgumentException ("Request body is larger than " + MAX_BODY + " bytes");
+      }
+      return new String (body.toByteArray (), CommandServer.UTF8);
+   }//end readBody
+
+   private String operationsJson () throws IOException {
+      StringWriter w = new StringWriter ();
+      w.write ("{\"operations\":[");
+      for (int number = 1; number <= DBProject.MENU_OPERATIONS.length; ++number) {
+         Operations.Operation op = Operations.get (String.valueOf (number));
+         if (number > 1)
+            w.write (',');
+         w.write ("{\"name\":");
+         ResultSink.writeString (w, op.name);
+         w.write (",\"method\":\"" + (op.write ? "POST" : "GET") + "\",\"usage\":");
+         ResultSink.writeString (w, op.usage ());
+         w.write ('}');
+      }
+      w.write ("]}");
+      return w.toString ();
+   }//end operationsJson
+
+   private String statsJson () {
+      List<String> names = new ArrayList<String> (_endpoints.keySet ());
+      Collections.sort (names);
+      StringBuilder b = new StringBuilder ("{\"endpoints\":[");
+      for (int i = 0; i < names.size (); ++i) {
+         Endpoint e = _endpoints.get (names.get (i));
+         LatencyHistogram h = e.latency;
+         if (i > 0)
+            b.append (',');
+         b.append (String.format (Locale.ROOT, "{\"endpoint\":\"%s\",\"requests\":%d,\"clientErrors\":%d,\"serverErrors\":%d,"
+                                  + "\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f,\"maxMs\":%.3f}",
+            names.get (i), h.getCount (), e.clientErrors.get (), e.serverErrors.get (),
+            LatencyHistogram.millis (h.getPercentile (50)), LatencyHistogram.millis (h.getPercentile (99)),
+            LatencyHistogram.millis (h.getPercentile (99.9)), LatencyHistogram.millis (h.getMax ())));
+      }
+      b.append ("],\"admission\":[");
+      String sep = "";
+      for (AdmissionControl.Lane l : this._esql.getAdmissionControl ().lanes ()) {
+         b.append (sep).append (String.format (Locale.ROOT, "{\"class\":\"%s\",\"limit\":%d,\"running\":%d,\"queued\":%d,"
+                                               + "\"peakQueued\":%d,\"admitted\":%d,\"queueFull\":%d,\"timedOut\":%d,"
+                                               + "\"waitP50Ms\":%.3f,\"waitP99Ms\":%.3f}",
+            l.name, l.limit, l.running (), l.queued.get (), l.peakQueued.get (), l.admitted.get (),
+            l.queueFull.get (), l.timedOut.get (),
+            LatencyHistogram.millis (l.wait.getPercentile (50)), LatencyHistogram.millis (l.wait.getPercentile (99))));
+         sep = ",";
+      }
+      b.append ("],\"pool\":\"").append (this._esql.getPoolStatistics ()).append ("\"}");
+      return b.toString ();
+   }//end statsJson
+
+   private static String errorJson (String message) throws IOException {
+      StringWriter w = new StringWriter ();
+      w.write ("{\"error\":");
+      ResultSink.writeString (w, String.valueOf (message));
+      w.write ('}');
+      return w.toString ();
+   }//end errorJson
+
+   /*
+    * Adds the name=value pairs of a query string to the inputs.
+    */
+   static void parseQuery (String query, Map<String, String> inputs) {
+      if (query == null)
+         return;
+      try {
+         for (String pair : query.split ("&")) {
+            if (pair.length () == 0)
+               continue;
+            int eq = pair.indexOf ('=');
+            String name = URLDecoder.decode (eq < 0 ? pair : pair.substring (0, eq), "UTF-8");
+            inputs.put (name, eq < 0 ? "" : URLDecoder.decode (pair.substring (eq + 1), "UTF-8"));
+         }
+      }catch (UnsupportedEncodingException e) {
+         throw new IllegalStateException (e);
+      }
+   }//end parseQuery
+
+   /*
+    * Adds the members of a flat JSON object to the inputs.  Strings are
+    * taken as they are, numbers and booleans as written, null as empty.
+    */
+   static void parseObject (String json, Map<String, String> inputs) {
+      JsonReader r = new JsonReader (json);
+      r.skipSpace ();
+      if (r.atEnd ())
+         return;
+      r.expect ('{');
+      r.skipSpace ();
+      if (r.peek () == '}') {
+         r.next ();
+      }else {
+         while (true) {
+            r.skipSpace ();
+            String name = r.string ();
+            r.skipSpace ();
+            r.expect (':');
+            r.skipSpace ();
+            inputs.put (name, r.peek () == '"' ? r.string () : r.literal ());
+            r.skipSpace ();
+            if (r.next () == '}')
+               break;
+            r.back ();
+            r.expect (',');
+         }
+      }
+      r.skipSpace ();
+      if (!r.atEnd ())
+         throw r.error ("end of the object");
+   }//end parseObject
+
+   /**
+    * Reads the tokens of a JSON text.
+    */
+   static class JsonReader {
+      private final String _s;
+      private int _pos = 0;
+
+      JsonReader (String s) {
+         this._s = s;
+      }
+
+      boolean atEnd () {
+         return _pos >= _s.length ();
+      }
+
+      char peek () {
+         if (atEnd ())
+            throw error ("more input");
+         return _s.charAt (_pos);
+      }
+
+      char next () {
+         char c = peek ();
+         ++_pos;
+         return c;
+      }
+
+      void back () {
+         --_pos;
+      }
+
+      void skipSpace () {
+         while (!atEnd () && Character.isWhitespace (_s.charAt (_pos)))
+            ++_pos;
+      }
+
+      void expect (char c) {
+         if (next () != c)
+            throw error ("'" + c + "'");
+      }
+
+      String string () {
+         expect ('"');
+         StringBuilder b = new StringBuilder ();
+         while (true) {
+            char c = next ();
+            if (c == '"')
+               return b.toString ();
+            if (c != '\\') {
+               b.append (c);
+               continue;
+            }
+            c = next ();
+            switch (c) {
+               case 'b': b.append ('\b'); break;
+               case 'f': b.append ('\f'); break;
+               case 'n': b.append ('\n'); break;
+               case 'r': b.append ('\r'); break;
+               case 't': b.append ('\t'); break;
+               case 'u':
+                  if (_pos + 4 > _s.length ())
+                     throw error ("four hex digits");
+                  try {
+                     b.append ((char) Integer.parseInt (_s.substring (_pos, _pos + 4), 16));
+                  }catch (NumberFormatException e) {
+                     throw error ("four hex digits");
+                  }
+                  _pos += 4;
+                  break;
+               default: b.append (c); break;
+            }
+         }
+      }
+
+      // a number, true, false or null; objects and arrays are not inputs
+      String literal () {
+         int start = _pos;
+         while (!atEnd () && "-+.0123456789eEtrufalsn".indexOf (_s.charAt (_pos)) >= 0)
+            ++_pos;
+         String text = _s.substring (start, _pos);
+         if (text.length () == 0)
+            throw error ("a string, number, boolean or null");
+         return text.equals ("null") ? "" : text;
+      }
+
+      IllegalArgumentException error (String expected) {
+         return new IllegalArgumentException ("Invalid JSON at offset " + _pos + ", expected " + expected);
+      }
+   }//end JsonReader
+
+   /**
+    * Rows as comma separated JSON objects keyed by column name, for the
+    * caller to wrap in an array.
+    */
+   static class JsonRows extends ResultSink {
+      private int _rows = 0;
+
+      JsonRows (Writer out) {
+         super (out);
+      }
+
+      protected void header () {
+         // column names are written with every row
+      }
+
+      protected void writeRow () throws IOException {
+         if (_rows++ > 0)
+            out.write (',');
+         out.write ('{');
+         for (int i = 0; i < values.length; ++i) {
+            if (i > 0)
+               out.write (',');
+            writeString (out, columns[i]);
+            out.write (':');
+            if (values[i] == null)
+               out.write ("null");
+            else
+               writeString (out, values[i]);
+         }
+         out.write ('}');
+      }
+   }//end JsonRows
+
+}//end HttpApi
@@ -0,0 +1,106 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out primary keys from Postgres sequences in blocks (hi-lo).  Every
+ * key sequence in create.sql is created with INCREMENT BY BLOCK_SIZE, so one
+ * nextval reserves BLOCK_SIZE consecutive keys for this process.  Keys from a
+ * block are handed out locally without a round trip, and two processes can
+ * never receive the same block.
+ */
+public class IdAllocator {
+
+   // must match the INCREMENT BY of the sequences in create.sql
+   public static final int BLOCK_SIZE = 50;
+
+   public static final String CUSTOMER = "customer_id_seq";
+   public static final String MAINTENANCE_COMPANY = "company_id_seq";
+   public static final String REPAIR = "repair_id_seq";
+   public static final String BOOKING = "booking_id_seq";
+   public static final String ASSIGNED = "assigned_id_seq";
+   public static final String REQUEST = "request_id_seq";
+
+   // sequence, table and key column, used to move a sequence past the keys
+   // already in its table
+   static final String[][] SEQUENCES = {
+      { CUSTOMER, "Customer", "customerID" },
+      { MAINTENANCE_COMPANY, "MaintenanceCompany", "cmpID" },
+      { REPAIR, "Repair", "rID" },
+      { BOOKING, "Booking", "bID" },
+      { ASSIGNED, "Assigned", "asgID" },
+      { REQUEST, "Request", "reqID" }
+   };
+
+   static final String NEXT_BLOCK_SQL = "SELECT nextval(CAST(? AS regclass))";
+
+   /**
+    * The unused part of the current block of one sequence.
+    */
+   private static class Block {
+      long next = 0;
+      long limit = 0;
+   }//end Block
+
+   private final DBProject _esql;
+   private final Map<String, Block> _blocks = new HashMap<String, Block> ();
+
+   public IdAllocator (DBProject esql) {
+      this._esql = esql;
+   }//end IdAllocator
+
+   /**
+    * Returns the next key of the sequence, reserving a new block from the
+    * database when the current one is used up.
+    *
+    * @param sequence the name of the key sequence
+    * @return a key no other caller receives
+    * @throws java.sql.SQLException when a new block cannot be reserved
+    */
+   public int next (String sequence) throws SQLException {
+      Block block;
+      synchronized (_blocks) {
+         block = _blocks.get (sequence);
+         if (block == null) {
+            block = new Block ();
+            _blocks.put (sequence, block);
+         }
+      }
+      synchronized (block) {
+         if (block.next >= block.limit) {
+            block.next = reserveBlock (sequence);
+            block.limit = block.next + BLOCK_SIZE;
+         }
+         long id = block.next++;
+         if (id > Integer.MAX_VALUE)
+            throw new SQLException ("Sequence " + sequence + " is past the int key range");
+         return (int) id;
+      }
+   }//end next
+
+   /**
+    * @return the statement that moves a sequence past the largest key in its
+    *         table, e.g. after a bulk load
+    */
+   static String resyncSql (String[] sequence) {
+      return "SELECT setval('" + sequence[0] + "', CAST(COALESCE(MAX(" + sequence[2] + "), 0) + 1 AS bigint), false) FROM " + sequence[1];
+   }//end resyncSql
+
+   private long reserveBlock (String sequence) throws SQLException {
+      Connection conn = _esql.borrowConnection ();
+      boolean failed = true;
+      try {
+         ResultSet rs = _esql.getStatementCache (conn).prepare (NEXT_BLOCK_SQL, sequence).executeQuery ();
+         rs.next ();
+         long start = rs.getLong (1);
+         rs.close ();
+         failed = false;
+         return start;
+      }finally {
+         _esql.releaseConnection (conn, failed);
+      }
+   }//end reserveBlock
+
+}//end IdAllocator
@@ -0,0 +1,338 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the menu queries under EXPLAIN, looks for sequential scans
+ * of large tables that filter on columns no index leads with, and suggests an
+ * index for each.  The queries are timed before and after the suggested
+ * indexes are created, like lab07/measure.sh does for part_nyc.  A scan of
+ * a partition is indexed on its partitioned table (e.g. Booking), whose row
+ * count is that of all its partitions.
+ *
+ * Everything happens in one transaction.  Sample inserts are undone with a
+ * savepoint and the suggested indexes are rolled back at the end unless the
+ * caller asks to keep them.
+ */
+public class IndexAdvisor {
+
+   // executions per query when timing, after one warm-up run
+   private static final int RUNS = Integer.getInteger ("dbproject.advise.runs", 5);
+
+   // tables with fewer (estimated) rows are fine to scan
+   private static final long MIN_ROWS = Long.getLong ("dbproject.advise.minRows", 1000L);
+
+   // a comparison of a column, e.g. "(b.hotelid = '1'::numeric)"
+   private static final Pattern COMPARISON =
+      Pattern.compile ("[\\s(.]([a-z_][a-z0-9_]*)\\)?\\s*(=|>=|<=|<|>)\\s");
+
+   private final DBProject _esql;
+
+   public IndexAdvisor (DBProject esql) {
+      this._esql = esql;
+   }//end IndexAdvisor
+
+   /**
+    * Explains and times the menu queries, prints the suggested indexes and
+    * the latency of every query without and with them.
+    *
+    * @param apply true to keep the suggested indexes, false to roll them back
+    * @throws java.sql.SQLException when a query cannot be explained or run
+    */
+   public void advise (boolean apply) throws SQLException {
+      Connection conn = _esql.borrowConnection ();
+      boolean failed = true;
+      try {
+         conn.setAutoCommit (false);
+         List<MenuQuery> queries = MenuQuery.sampled (conn);
+         MenuQuery.createSamplePartition (conn);
+
+         double[] before = new double[queries.size ()];
+         for (int i = 0; i < before.length; ++i)
+            before[i] = time (conn, queries.get (i));
+
+         Set<String> suggestions = new LinkedHashSet<String> ();
+         Map<String, String> reasons = new HashMap<String, String> ();
+         for (MenuQuery q : queries) {
+            for (String index : suggest (conn, q)) {
+               if (suggestions.add (index))
+                  reasons.put (index, q.toString ());
+            }
+         }
+
+         Statement stmt = conn.createStatement ();
+         try {
+            for (String index : suggestions)
+               stmt.executeUpdate (index);
+            for (String table : indexedTables (suggestions))
+               stmt.executeUpdate ("ANALYZE " + table);
+         }finally {
+            stmt.close ();
+         }
+
+         double[] after = new double[queries.size ()];
+         for (int i = 0; i < after.length; ++i)
+            after[i] = time (conn, queries.get (i));
+
+         System.out.println ("Suggested indexes:");
+         if (suggestions.isEmpty ())
+            System.out.println ("  (none)");
+         for (String index : suggestions)
+            System.out.println ("  " + index + ";   -- " + reasons.get (index));
+         System.out.println ();
+         System.out.println (String.format ("%-42s %12s %12s", "Query", "before (ms)", "after (ms)"));
+         for (int i = 0; i < queries.size (); ++i)
+            System.out.println (String.format ("%-42s %12.3f %12.3f", queries.get (i), before[i], after[i]));
+
+         // undo the sample partition and rows, then build the indexes for good
+         conn.rollback ();
+         if (apply) {
+            stmt = conn.createStatement ();
+            try {
+               for (String index : suggestions)
+                  stmt.executeUpdate (index);
+            }finally {
+               stmt.close ();
+            }
+            conn.commit ();
+            System.out.println ("Created " + suggestions.size () + " indexes");
+         }
+         failed = false;
+      }finally {
+         _esql.releaseConnection (conn, failed);
+      }
+   }//end advise
+
+   /*
+    * Returns CREATE INDEX statements for the sequential scans in the plan of
+    * the query that filter a large table on unindexed columns.
+    */
+   List<String> suggest (Connection conn, MenuQuery q) throws SQLException {
+      List<String> result = new ArrayList<String> ();
+      String table = null;
+      int depth = -1;
+      Set<String> equality = new LinkedHashSet<String> ();
+      Set<String> range = new LinkedHashSet<String> ();
+      List<String> plan = explain (conn, q);
+      plan.add ("->");   // closes the last node
+      for (String line : plan) {
+         int indent = indentOf (line);
+         boolean node = line.contains ("->") || indent == 0;
+         if (node && table != null) {
+            String index = indexFor (conn, table, equality, range);
+            if (index != null && !result.contains (index))
+               result.add (index);
+            table = null;
+         }
+         if (node) {
+            int at = line.indexOf ("Seq Scan on ");
+            if (at >= 0) {
+               // a scan of one Booking partition is indexed on Booking
+               table = rootOf (conn, line.substring (at + 12).split ("\\s+")[0]);
+               depth = indent;
+               equality.clear ();
+               range.clear ();
+            }
+         }else if (table != null && indent > depth && line.trim ().startsWith ("Filter:")) {
+            Matcher m = COMPARISON.matcher (line.toLowerCase ());
+            while (m.find ()) {
+               if (m.group (2).equals ("="))
+                  equality.add (m.group (1));
+               else
+                  range.add (m.group (1));
+            }
+         }
+      }//end for
+      return result;
+   }//end suggest
+
+   /*
+    * Builds the index for a scanned table: equality columns first, then at
+    * most one range column.  Returns null when the table is small, the
+    * filter names none of its columns or an index already leads with them.
+    */
+   private String indexFor (Connection conn, String table, Set<String> equality, Set<String> range) throws SQLException {
+      Set<String> columns = columnsOf (conn, table);
+      List<String> key = new ArrayList<String> ();
+      for (String c : equality) {
+         if (columns.contains (c))
+            key.add (c);
+      }
+      for (String c : range) {
+         if (columns.contains (c) && !key.contains (c)) {
+            key.add (c);
+            break;
+         }
+      }
+      if (key.isEmpty () || estimatedRows (conn, table) < MIN_ROWS)
+         return null;
+      for (List<String> existing : indexesOf (conn, table)) {
+         if (existing.size () >= key.size () && existing.subList (0, key.size ()).equals (key))
+            return null;
+      }
+      StringBuilder name = new StringBuilder ("advise_").append (table);
+      for (String c : key)
+         name.append ('_').append (c);
+      return "CREATE INDEX " + name + " ON " + table + " (" + join (key) + ")";
+   }//end indexFor
+
+   private static List<String> explain (Connection conn, MenuQuery q) throws SQLException {
+      PreparedStatement stmt = conn.prepareStatement ("EXPLAIN " + q.sql);
+      try {
+         StatementCache.bind (stmt, q.params);
+         ResultSet rs = stmt.executeQuery ();
+         List<String> lines = new ArrayList<String> ();
+         while (rs.next ())
+            lines.add (rs.getString (1));
+         rs.close ();
+         return lines;
+      }finally {
+         stmt.close ();
+      }
+   }//end explain
+
+   /*
+    * Median wall clock time of RUNS executions in milliseconds.  Writes are
+    * undone after every run.
+    */
+   private static double time (Connection conn, MenuQuery q) throws SQLException {
+      PreparedStatement stmt = conn.prepareStatement (q.sql);
+      Statement savepoint = conn.createStatement ();
+      try {
+         StatementCache.bind (stmt, q.params);
+         double[] runs = new double[RUNS];
+         for (int i = -1; i < RUNS; ++i) {
+            if (q.write)
+               savepoint.executeUpdate ("SAVEPOINT advise");
+            long start = System.nanoTime ();
+            if (q.write) {
+               stmt.executeUpdate ();
+            }else {
+               ResultSet rs = stmt.executeQuery ();
+               while (rs.next ())
+                  ;
+               rs.close ();
+            }
+            long elapsed = System.nanoTime () - start;
+            if (q.write)
+               savepoint.executeUpdate ("ROLLBACK TO SAVEPOINT advise");
+            if (i >= 0)
+               runs[i] = elapsed / 1e6;
+         }//end for
+         Arrays.sort (runs);
+         return runs[RUNS / 2];
+      }finally {
+         savepoint.close ();
+         stmt.close ();
+      }
+   }//end time
+
+   private static Set<String> columnsOf (Connection conn, String table) throws SQLException {
+      Set<String> columns = new HashSet<String> ();
+      for (String[] row : rows (conn, "SELECT attname FROM pg_attribute WHERE attrelid = '" + table
+                                + "'::regclass AND attnum > 0 AND NOT attisdropped"))
+         columns.add (row[0]);
+      return columns;
+   }//end columnsOf
+
+   /*
+    * Key columns of every index on the table, read from its definition.
+    */
+   private static List<List<String>> indexesOf (Connection conn, String table) throws SQLException {
+      List<List<String>> result = new ArrayList<List<String>> ();
+      for (String[] row : rows (conn, "SELECT pg_get_indexdef(indexrelid) FROM pg_index WHERE indrelid = '"
+                                + table + "'::regclass")) {
+         String def = row[0];
+         int open = def.indexOf ('(', def.indexOf (" USING "));
+         String[] cols = def.substring (open + 1, def.lastIndexOf (')')).split (",");
+         List<String> key = new ArrayList<String> ();
+         for (String c : cols)
+            key.add (c.trim ().split ("\\s+")[0].replace ("\"", "").toLowerCase ());
+         result.add (key);
+      }
+      return result;
+   }//end indexesOf
+
+   /*
+    * The partitioned table a partition belongs to, through every level of
+    * pg_inherits, or the table itself.
+    */
+   private static String rootOf (Connection conn, String table) throws SQLException {
+      while (true) {
+         List<String[]> r = rows (conn, "SELECT inhparent::regclass FROM pg_inherits WHERE inhrelid = '"
+                                  + table + "'::regclass");
+         if (r.isEmpty ())
+            return table;
+         table = r.get (0)[0];
+      }
+   }//end rootOf
+
+   /*
+    * Estimated rows of the table and all of its partitions; a partitioned
+    * table holds no rows itself.
+    */
+   private static long estimatedRows (Connection conn, String table) throws SQLException {
+      List<String[]> r = rows (conn, "WITH RECURSIVE t(oid) AS (SELECT '" + table + "'::regclass::oid"
+                               + " UNION ALL SELECT i.inhrelid FROM pg_inherits i, t WHERE i.inhparent = t.oid)"
+                               + " SELECT COALESCE(SUM(GREATEST(c.reltuples, 0)), 0)::bigint FROM pg_class c, t WHERE c.oid = t.oid");
+      return r.isEmpty () ? 0 : Long.parseLong (r.get (0)[0]);
+   }//end estimatedRows
+
+   private static List<String[]> rows (Connection conn, String sql) throws SQLException {
+      Statement stmt = conn.createStatement ();
+      try {
+         ResultSet rs = stmt.executeQuery (sql);
+         int columns = rs.getMetaData ().getColumnCount ();
+         List<String[]> rows = new ArrayList<String[]> ();
+         while (rs.next ()) {
+            String[] row = new String[columns];
+            for (int i = 0; i < columns; ++i)
+               row[i] = rs.getString (i + 1);
+            rows.add (row);
+         }
+         rs.close ();
+         return rows;
+      }finally {
+         stmt.close ();
+      }
+   }//end rows
+
+   private static Set<String> indexedTables (Set<String> indexes) {
+      Set<String> tables = new LinkedHashSet<String> ();
+      for (String index : indexes) {
+         int on = index.indexOf (" ON ");
+         tables.add (index.substring (on + 4, index.indexOf (' ', on + 4)));
+      }
+      return tables;
+   }//end indexedTables
+
+   private static int indentOf (String line) {
+      int i = 0;
+      while (i < line.length () && line.charAt (i) == ' ')
+         ++i;
+      return i;
+   }//end indentOf
+
+   private static String join (List<String> items) {
+      StringBuilder sb = new StringBuilder ();
+      for (String s : items) {
+         if (sb.length () > 0)
+            sb.append (", ");
+         sb.append (s);
+      }
+      return sb.toString ();
+   }//end join
+
+}//end IndexAdvisor
@@ -0,0 +1,169 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The SQL of one of the menu operations bound to sample parameters
+ * drawn from the current database.  Tools that look at the menu queries as a
+ * whole (index advice, plan checks) run this list instead of prompting.
+ */
+public class MenuQuery {
+
+   // sample keys far outside the loaded data, so sample inserts do not
+   // collide with real rows; they are always rolled back
+   private static final int SAMPLE_KEY = -1;
+
+   // night of the sample booking, far past any real booking
+   private static final Date SAMPLE_BOOKING_DATE = plusDays (new Date (), 365 * 50);
+
+   final int number;
+   final String name;
+   final String sql;
+   final Object[] params;
+   final boolean write;
+
+   MenuQuery (int number, String name, String sql, boolean write, Object... params) {
+      this.number = number;
+      this.name = name;
+      this.sql = sql;
+      this.write = write;
+      this.params = params;
+   }//end MenuQuery
+
+   public String toString () {
+      return number + ". " + name;
+   }//end toString
+
+   /**
+    * Builds the menu queries with parameters taken from rows that
+    * exist in the database (the first real hotel room, customer, company,
+    * manager and repair, and the first day of the busiest booking month).
+    *
+    * @param conn the connection used to look up the sample rows
+    * @return the menu queries in menu order
+    * @throws java.sql.SQLException when the sample rows cannot be read
+    */
+   public static List<MenuQuery> sampled (Connection conn) throws SQLException {
+      Object[] room = first (conn, "SELECT hotelID, roomNo FROM Room WHERE hotelID <> 0 ORDER BY hotelID, roomNo LIMIT 1");
+      Object[] customer = first (conn, "SELECT customerID, fName, lName FROM Customer WHERE customerID <> 0 ORDER BY customerID LIMIT 1");
+      Object[] company = first (conn, "SELECT cmpID, name FROM MaintenanceCompany WHERE cmpID <> 0 ORDER BY cmpID LIMIT 1");
+      Object[] manager = first (conn, "SELECT SSN FROM Staff WHERE role = 'Manager' AND SSN <> 0 ORDER BY SSN LIMIT 1");
+      Object[] cleaner = first (conn, "SELECT SSN FROM Staff WHERE role = 'HouseCleaning' ORDER BY SSN LIMIT 1");
+      Object[] repair = first (conn, "SELECT rID FROM Repair WHERE rID <> 0 ORDER BY rID LIMIT 1");
+      Object[] month = first (conn, "SELECT CAST(date_trunc('month', bookingDate) AS date) FROM Booking"
+                              + " WHERE bookingDate > DATE '2000-01-01' GROUP BY 1 ORDER BY COUNT(*) DESC, 1 LIMIT 1");
+
+      return build (intValue (room[0]), intValue (room[1]), intValue (customer[0]),
+                    String.valueOf (customer[1]).trim (), String.valueOf (customer[2]).trim (),
+                    intValue (company[0]), String.valueOf (company[1]).trim (),
+                    intValue (manager[0]), intValue (cleaner[0]), intValue (repair[0]),
+                    month[0] == null ? new Date () : (Date) month[0]);
+   }//end sampled
+
+   /**
+    * Builds the menu queries around the given sample rows.
+    *
+    * @param from the first day of the date ranges and the date of the
+    *        sample inserts
+    * @return the menu queries in menu order
+    */
+   static List<MenuQuery> build (int hotelID, int roomNo, int customerID, String fName, String lName,
+                                 int companyID, String companyName, int managerSSN, int cleanerSSN,
+                                 int repairID, Date from) {
+      Date week = plusDays (from, 7);
+      Date to = plusDays (from, 365);
+      int k = 5;
+
+      List<MenuQuery> queries = new ArrayList<MenuQuery> ();
+      queries.add (new MenuQuery (1, "addCustomer", DBProject.ADD_CUSTOMER_SQL, true,
+         SAMPLE_KEY, "sample", "sample", "sample", 5550100L, from, "Other"));
+      queries.add (new MenuQuery (2, "addRoom", DBProject.ADD_ROOM_SQL, true,
+         hotelID, SAMPLE_KEY, "Suite"));
+      queries.add (new MenuQuery (3, "addMaintenanceCompany", DBProject.ADD_MAINTENANCE_COMPANY_SQL, true,
+         SAMPLE_KEY, "sample", "sample", Boolean.TRUE));
+      queries.add (new MenuQuery (4, "addRepair", DBProject.ADD_REPAIR_SQL, true,
+         SAMPLE_KEY, hotelID, roomNo, companyID, from, "sample", "Small"));
+      queries.add (new MenuQuery (5, "bookRoom", DBProject.BOOK_ROOM_SQL, true,
+         SAMPLE_KEY, customerID, hotelID, roomNo, SAMPLE_BOOKING_DATE, 1, 100));
+      queries.add (new MenuQuery (6, "assignHouseCleaningToRoom", DBProject.ASSIGN_HOUSE_CLEANING_SQL, true,
+         SAMPLE_KEY, cleanerSSN, hotelID, roomNo));
+      queries.add (new MenuQuery (7, "repairRequest", DBProject.REPAIR_REQUEST_SQL, true,
+         SAMPLE_KEY, managerSSN, repairID, from, "sample"));
+      queries.add (new MenuQuery (8, "numberOfAvailableRooms", DBProject.AVAILABLE_ROOMS_SQL, false,
+         from, hotelID));
+      queries.add (new MenuQuery (9, "numberOfBookedRooms", DBProject.BOOKED_ROOMS_SQL, false,
+         from, hotelID));
+      queries.add (new MenuQuery (10, "listHotelRoomBookingsForAWeek", DBProject.ROOMS_FREE_FOR_A_WEEK_SQL, false,
+         hotelID, hotelID, from, week));
+      queries.add (new MenuQuery (11, "topKHighestRoomPriceForADateRange", DBProject.TOP_K_ROOM_PRICE_SQL, false,
+         from, to, k));
+      queries.add (new MenuQuery (12, "topKHighestPriceBookingsForACustomer", DBProject.TOP_K_CUSTOMER_PRICE_SQL, false,
+         fName, lName, k));
+      queries.add (new MenuQuery (13, "totalCostForCustomer", DBProject.CUSTOMER_TOTAL_COST_SQL, false,
+         from, to, customerID));
+      queries.add (new MenuQuery (14, "listRepairsMade", DBProject.REPAIRS_BY_COMPANY_SQL, false,
+         companyName));
+      queries.add (new MenuQuery (15, "topKMaintenanceCompany", DBProject.TOP_K_MAINTENANCE_COMPANY_SQL, false,
+         k));
+      queries.add (new MenuQuery (16, "numberOfRepairsForEachRoomPerYear", DBProject.REPAIRS_PER_YEAR_SQL, false,
+         hotelID, roomNo));
+      queries.add (new MenuQuery (17, "roomsOnDate", DBProject.ROOMS_ON_DATE_SQL, false,
+         from, hotelID));
+      queries.add (new MenuQuery (18, "searchAvailableRooms", DBProject.SEARCH_AVAILABLE_ROOMS_SQL, false,
+         hotelID, -1, hotelID, "", "", from, week, 10));
+      return queries;
+   }//end build
+
+   /**
+    * Creates the Booking partition the sample booking goes to, for callers
+    * that run the sample inserts.  The sample booking is far past any real
+    * booking, so the caller must be in a transaction it rolls back.
+    *
+    * @param conn the connection of the caller's transaction
+    * @throws java.sql.SQLException when the partition cannot be created
+    */
+   static void createSamplePartition (Connection conn) throws SQLException {
+      PreparedStatement stmt = conn.prepareStatement (DBProject.ENSURE_PARTITIONS_SQL);
+      try {
+         StatementCache.bind (stmt, SAMPLE_BOOKING_DATE, SAMPLE_BOOKING_DATE);
+         stmt.executeQuery ().close ();
+      }finally {
+         stmt.close ();
+      }
+   }//end createSamplePartition
+
+   private static Object[] first (Connection conn, String sql) throws SQLException {
+      Statement stmt = conn.createStatement ();
+      try {
+         ResultSet rs = stmt.executeQuery (sql);
+         int columns = rs.getMetaData ().getColumnCount ();
+         Object[] row = new Object[columns];
+         if (rs.next ()) {
+            for (int i = 0; i < columns; ++i)
+               row[i] = rs.getObject (i + 1);
+         }
+         rs.close ();
+         return row;
+      }finally {
+         stmt.close ();
+      }
+   }//end first
+
+   private static int intValue (Object o) {
+      return o == null ? 0 : ((Number) o).intValue ();
+   }//end intValue
+
+   private static Date plusDays (Date d, int days) {
+      Calendar c = Calendar.getInstance ();
+      c.setTime (d);
+      c.add (Calendar.DATE, days);
+      return c.getTime ();
+   }//end plusDays
+
+}//end MenuQuery
@@ -0,0 +1,438 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The menu operations with their inputs given as strings, in the order the
+ * menu prompts for them, instead of typed at the prompts.  The service modes
+ * (see {@link CommandServer} and {@link HttpApi}) run them for their
+ * clients and the batch mode (see {@link BatchRunner}) for a file.
+ *
+ * Every operation checks its inputs the way its prompts do and writes its
+ * result as rows to a sink: the rows of a query, or one row with the key a
+ * write added.  A booking that finds the room taken is a result
+ * (CONFLICT), not an error.  Dates are taken as MM/dd/yyyy, as at the
+ * prompts, or yyyy-MM-dd.
+ */
+public class Operations {
+
+   /**
+    * One menu operation.
+    */
+   public abstract static class Operation {
+      public final int number;
+      public final String name;
+      public final boolean write;
+      // admission class, see AdmissionControl
+      public final String admissionClass;
+      // names of the inputs in prompt order, the last ones may be optional
+      final String[] inputs;
+      final int required;
+
+      Operation (int number, boolean write, int required, String... inputs) {
+         this.number = number;
+         this.name = DBProject.MENU_OPERATIONS[number - 1];
+         this.write = write;
+         this.admissionClass = number == 5 || number == 19 ? AdmissionControl.BOOKINGS
+                             : write ? AdmissionControl.WRITES
+                             : number >= 10 && number <= 16 ? AdmissionControl.REPORTS
+                             : AdmissionControl.QUERIES;
+         this.required = required;
+         this.inputs = inputs;
+      }
+
+      Operation (int number, boolean write, String... inputs) {
+         this (number, write, inputs.length, inputs);
+      }
+
+      /**
+       * Runs the operation once its admission class has a free slot and
+       * writes its result to the sink, which is ended when the result is
+       * complete.
+       *
+       * @param args the inputs in prompt order
+       * @throws java.lang.IllegalArgumentException when an input is missing
+       *         or invalid, before anything is run
+       * @throws AdmissionControl.Rejected when the admission class is
+       *         overloaded, nothing is run
+       * @throws java.sql.SQLException when a statement fails
+       * @throws java.io.IOException when writing the result fails
+       */
+      public void run (DBProject esql, String[] args, ResultSink sink) throws SQLException, IOException {
+         if (args.length < required || args.length > inputs.length)
+            throw new IllegalArgumentException ("Usage: " + usage ());
+         AdmissionControl admission = esql.getAdmissionControl ();
+         admission.enter (admissionClass);
+         QueryMetrics.setOperation (name);
+         try {
+            execute (esql, args, sink);
+         }finally {
+            QueryMetrics.setOperation (null);
+            admission.exit (admissionClass);
+         }
+      }//end run
+
+      abstract void execute (DBProject esql, String[] args, ResultSink sink) throws SQLException, IOException;
+
+      /**
+       * Puts named inputs in prompt order, for callers that name them
+       * (e.g. a JSON object).
+       *
+       * @param named the inputs by the names in {@link #usage()}
+       * @return the inputs in prompt order, up to the last one given
+       * @throws java.lang.IllegalArgumentException when a required input is
+       *         missing or a name is not an input of this operation
+       */
+      public String[] arguments (Map<String, String> named) {
+         for (String name : named.keySet ()) {
+            if (!Arrays.asList (inputs).contains (name))
+               throw new IllegalArgumentException ("Unknown input " + name + ", usage: " + usage ());
+         }
+         int n = 0;
+         while (n < inputs.length && named.containsKey (inputs[n]))
+            ++n;
+         if (n < required)
+            throw new IllegalArgumentException ("Missing input " + inputs[n] + ", usage: " + usage ());
+         String[] args = new String[n];
+         for (int i = 0; i < n; ++i)
+            args[i] = named.get (inputs[i]);
+         return args;
+      }//end arguments
+
+      /**
+       * @return the operation name followed by its inputs, optional ones in
+       *         brackets
+       */
+      public String usage () {
+         StringBuilder b = new StringBuilder (name);
+         for (int i = 0; i < inputs.length; ++i)
+            b.append (i < required ? " <" : " [<").append (inputs[i]).append (i < required ? ">" : ">]");
+         return b.toString ();
+      }//end usage
+
+      int intValue (String[] args, int i) {
+         try {
+            return Integer.parseInt (args[i].trim ());
+         }catch (NumberFormatException e) {
+            throw new IllegalArgumentException ("Not a valid " + inputs[i] + ": " + args[i]);
+         }
+      }//end intValue
+
+      long longValue (String[] args, int i) {
+         try {
+            return Long.parseLong (args[i].trim ());
+         }catch (NumberFormatException e) {
+            throw new IllegalArgumentException ("Not a valid " + inputs[i] + ": " + args[i]);
+         }
+      }//end longValue
+
+      // a date as the prompts take it (MM/dd/yyyy), or yyyy-MM-dd
+      Date date (String[] args, int i) {
+         String text = args[i].trim ();
+         try {
+            if (text.length () == 10 && text.charAt (4) == '-')
+               return new SimpleDateFormat ("yyyy-MM-dd").parse (text);
+            return DBProject.parseDate (text);
+         }catch (ParseException e) {
+            throw new IllegalArgumentException ("Not a valid " + inputs[i] + " (MM/dd/yyyy): " + args[i]);
+         }
+      }//end date
+
+      // an optional date, today when it is missing or empty
+      Date dateOrToday (String[] args, int i) {
+         return i < args.length && args[i].trim ().length () > 0 ? date (args, i) : DBProject.today ();
+      }//end dateOrToday
+
+      // a text input of 1 to maxLength characters, as the prompts accept
+      String text (String[] args, int i, int maxLength) {
+         if (args[i].length () <= 0 || args[i].length () > maxLength)
+            throw new IllegalArgumentException (inputs[i] + " cannot be 0 letters or longer than " + maxLength);
+         return args[i];
+      }//end text
+   }//end Operation
+
+   /**
+    * A read-only operation: one query, its rows are the result.
+    */
+   abstract static class Query extends Operation {
+      final String sql;
+
+      Query (int number, String sql, String... inputs) {
+         this (number, sql, inputs.length, inputs);
+      }
+
+      Query (int number, String sql, int required, String... inputs) {
+         super (number, false, required, inputs);
+         this.sql = sql;
+      }
+
+      void execute (DBProject esql, String[] args, ResultSink sink) throws SQLException, IOException {
+         esql.executeQuery (sink, sql, params (args));
+      }
+
+      abstract Object[] params (String[] args);
+   }//end Query
+
+   /**
+    * An operation that adds one row with one INSERT, the key of the row
+    * first among its parameters.  The batch mode (see {@link BatchRunner})
+    * sends many of them as one JDBC batch.
+    */
+   abstract static class Insert extends Operation {
+      final String sql;
+      // the result columns, taken from the first parameters
+      final String[] keys;
+
+      Insert (int number, String sql, String[] keys, String... inputs) {
+         super (number, true, inputs);
+         this.sql = sql;
+         this.keys = keys;
+      }
+
+      void execute (DBProject esql, String[] args, ResultSink sink) throws SQLException, IOException {
+         written (sink, keys, insert (esql, params (esql, args)));
+      }
+
+      /**
+       * Checks the inputs and returns the parameters of the INSERT, with
+       * a new key where the table's key comes from a key sequence.
+       *
+       * @throws java.lang.IllegalArgumentException when an input is invalid
+       * @throws java.sql.SQLException when no key can be allocated
+       */
+      abstract Object[] params (DBProject esql, String[] args) throws SQLException;
+
+      /**
+       * Runs the INSERT on its own and returns the result row.
+       */
+      String[] insert (DBProject esql, Object[] params) throws SQLException {
+         esql.executeUpdate (sql, params);
+         String[] row = new String[keys.length];
+         for (int i = 0; i < row.length; ++i)
+            row[i] = String.valueOf (params[i]);
+         return row;
+      }
+   }//end Insert
+
+   // operations by name and by menu number
+   private static final Map<String, Operation> OPERATIONS = new LinkedHashMap<String, Operation> ();
+
+   static {
+      add (new Insert (1, DBProject.ADD_CUSTOMER_SQL, new String[] { "customerID" },
+                       "fName", "lName", "address", "phNo", "DOB", "gender") {
+         Object[] params (DBProject esql, String[] args) throws SQLException {
+            String fName = text (args, 0, 30), lName = text (args, 1, 30), address = text (args, 2, 30);
+            long phNo = longValue (args, 3);
+            Date dob = date (args, 4);
+            String gender = args[5];
+            if (!gender.equals ("Male") && !gender.equals ("Female") && !gender.equals ("Other"))
+               throw new IllegalArgumentException ("Gender can only be Male, Female, or Other");
+            return new Object[] { esql.nextId (IdAllocator.CUSTOMER), fName, lName, address, phNo, dob, gender };
+         }
+      });
+      add (new Insert (2, DBProject.ADD_ROOM_SQL, new String[] { "hotelID", "roomNo" },
+                       "hotelID", "roomNo", "roomType") {
+         Object[] params (DBProject esql, String[] args) {
+            return new Object[] { intValue (args, 0), intValue (args, 1), text (args, 2, 10) };
+         }
+      });
+      add (new Insert (3, DBProject.ADD_MAINTENANCE_COMPANY_SQL, new String[] { "cmpID" },
+                       "name", "address", "isCertified") {
+         Object[] params (DBProject esql, String[] args) throws SQLException {
+            String name = text (args, 0, 30), address = text (args, 1, 30);
+            if (!args[2].equals ("TRUE") && !args[2].equals ("FALSE"))
+               throw new IllegalArgumentException ("isCertified is either TRUE or FALSE");
+            return new Object[] { esql.nextId (IdAllocator.MAINTENANCE_COMPANY), name, address,
+                                  Boolean.valueOf (args[2].equals ("TRUE")) };
+         }
+      });
+      add (new Insert (4, DBProject.ADD_REPAIR_SQL, new String[] { "rID" },
+                       "hotelID", "roomNo", "mCompany", "repairDate", "description", "repairType") {
+         Object[] params (DBProject esql, String[] args) throws SQLException {
+            int hotelID = intValue (args, 0), roomNo = intValue (args, 1), mCompany = intValue (args, 2);
+            Date repairDate = date (args, 3);
+            String repairType = text (args, 5, 10);
+            return new Object[] { esql.nextId (IdAllocator.REPAIR), hotelID, roomNo, mCompany, repairDate, args[4], repairType };
+         }
+      });
+      // a taken room night is a CONFLICT result, not an error
+      add (new Insert (5, DBProject.BOOK_ROOM_SQL, new String[] { "result", "bID" },
+                       "hotelID", "roomNo", "customerID", "bookingDate", "noOfPeople", "price") {
+         Object[] params (DBProject esql, String[] args) throws SQLException {
+            int hotelID = intValue (args, 0), roomNo = intValue (args, 1), customerID = intValue (args, 2);
+            Date bookingDate = date (args, 3);
+            int noOfPeople = intValue (args, 4), price = intValue (args, 5);
+            return new Object[] { esql.nextId (IdAllocator.BOOKING), customerID, hotelID, roomNo, bookingDate, noOfPeople, price };
+         }
+
+         String[] insert (DBProject esql, Object[] p) throws SQLException {
+            DBProject.BookingResult result = esql.reserveRoom ((Integer) p[0], (Integer) p[1], (Integer) p[2], (Integer) p[3],
+                                                               (Date) p[4], (Integer) p[5], (Integer) p[6]);
+            return new String[] { result.name (), result == DBProject.BookingResult.BOOKED ? String.valueOf (p[0]) : null };
+         }
+      });
+      add (new Insert (6, DBProject.ASSIGN_HOUSE_CLEANING_SQL, new String[] { "asgID" },
+                       "staffID", "hotelID", "roomNo") {
+         Object[] params (DBProject esql, String[] args) throws SQLException {
+            int staffID = intValue (args, 0), hotelID = intValue (args, 1), roomNo = intValue (args, 2);
+            return new Object[] { esql.nextId (IdAllocator.ASSIGNED), staffID, hotelID, roomNo };
+         }
+      });
+      add (new Insert (7, DBProject.REPAIR_REQUEST_SQL, new String[] { "reqID" },
+                       "managerID", "repairID", "requestDate", "description") {
+         Object[] params (DBProject esql, String[] args) throws SQLException {
+            int managerID = intValue (args, 0), repairID = intValue (args, 1);
+            Date requestDate = date (args, 2);
+            return new Object[] { esql.nextId (IdAllocator.REQUEST), managerID, repairID, requestDate, args[3] };
+         }
+      });
+      // 8 and 9 count one night, today unless a date is given
+      add (new Query (8, DBProject.AVAILABLE_ROOMS_SQL, 1, "hotelID", "date") {
+         Object[] params (String[] args) {
+            int hotelID = intValue (args, 0);
+            return new Object[] { dateOrToday (args, 1), hotelID };
+         }
+      });
+      add (new Query (9, DBProject.BOOKED_ROOMS_SQL, 1, "hotelID", "date") {
+         Object[] params (String[] args) {
+            int hotelID = intValue (args, 0);
+            return new Object[] { dateOrToday (args, 1), hotelID };
+         }
+      });
+      add (new Query (10, DBProject.ROOMS_FREE_FOR_A_WEEK_SQL, "hotelID", "date") {
+         Object[] params (String[] args) {
+            int hotelID = intValue (args, 0);
+            Date from = date (args, 1);
+            return new Object[] { hotelID, hotelID, from, plusDays (from, 7) };
+         }
+      });
+      add (new Query (11, DBProject.TOP_K_ROOM_PRICE_SQL, "fromDate", "toDate", "k") {
+         Object[] params (String[] args) {
+            return new Object[] { date (args, 0), date (args, 1), intValue (args, 2) };
+         }
+      });
+      add (new Query (12, DBProject.TOP_K_CUSTOMER_PRICE_SQL, "fName", "lName", "k") {
+         Object[] params (String[] args) {
+            return new Object[] { text (args, 0, 30), text (args, 1, 30), intValue (args, 2) };
+         }
+      });
+      add (new Query (13, DBProject.CUSTOMER_TOTAL_COST_SQL, "customerID", "fromDate", "toDate") {
+         Object[] params (String[] args) {
+            return new Object[] { date (args, 1), date (args, 2), intValue (args, 0) };
+         }
+      });
+      add (new Query (14, DBProject.REPAIRS_BY_COMPANY_SQL, "companyName") {
+         Object[] params (String[] args) {
+            return new Object[] { text (args, 0, 30) };
+         }
+      });
+      add (new Query (15, DBProject.TOP_K_MAINTENANCE_COMPANY_SQL, "k") {
+         Object[] params (String[] args) {
+            return new Object[] { intValue (args, 0) };
+         }
+      });
+      add (new Query (16, DBProject.REPAIRS_PER_YEAR_SQL, "hotelID", "roomNo") {
+         Object[] params (String[] args) {
+            return new Object[] { intValue (args, 0), intValue (args, 1) };
+         }
+      });
+      add (new Query (17, DBProject.ROOMS_ON_DATE_SQL, "hotelID", "date") {
+         Object[] params (String[] args) {
+            int hotelID = intValue (args, 0);
+            return new Object[] { date (args, 1), hotelID };
+         }
+      });
+      // one page of rooms; the next page starts after the hotelID and roomNo
+      // of the last row
+      add (new Operation (18, false, 5, "hotelID", "checkIn", "checkOut", "roomType", "pageSize",
+                          "afterHotelID", "afterRoomNo") {
+         void execute (DBProject esql, String[] args, ResultSink sink) throws SQLException, IOException {
+            int hotelID = intValue (args, 0);
+            if (hotelID < 0)
+               throw new IllegalArgumentException ("Hotel ID cannot be negative");
+            Date checkIn = date (args, 1), checkOut = date (args, 2);
+            if (!checkOut.after (checkIn))
+               throw new IllegalArgumentException ("Check-out must be after check-in");
+            String roomType = args[3].trim ();
+            if (roomType.length () > 10)
+               throw new IllegalArgumentException ("Room type is at most 10 characters");
+            int pageSize = intValue (args, 4);
+            if (pageSize <= 0)
+               throw new IllegalArgumentException ("Number of rooms must be positive");
+            long afterHotel = args.length > 5 ? intValue (args, 5) : hotelID == 0 ? 1 : hotelID;
+            long afterRoom = args.length > 6 ? intValue (args, 6) : -1;
+            long lastHotel = hotelID == 0 ? Integer.MAX_VALUE : hotelID;
+            esql.executeQuery (sink, DBProject.SEARCH_AVAILABLE_ROOMS_SQL, afterHotel, afterRoom, lastHotel,
+                               roomType, roomType, checkIn, checkOut, pageSize);
+         }
+      });
+      add (new Operation (19, true, "hotelID", "roomNo", "customerID", "checkIn", "nights", "noOfPeople", "price") {
+         void execute (DBProject esql, String[] args, ResultSink sink) throws SQLException, IOException {
+            int hotelID = intValue (args, 0), roomNo = intValue (args, 1), customerID = intValue (args, 2);
+            Date checkIn = date (args, 3);
+            int nights = intValue (args, 4);
+            if (nights <= 0 || nights > 365)
+               throw new IllegalArgumentException ("Number of nights must be between 1 and 365");
+            int noOfPeople = intValue (args, 5), price = intValue (args, 6);
+            int[] bIDs = new int[nights];
+            for (int i = 0; i < nights; ++i)
+               bIDs[i] = esql.nextId (IdAllocator.BOOKING);
+            DBProject.BookingResult result = esql.reserveStay (bIDs, customerID, hotelID, roomNo, checkIn, noOfPeople, price);
+            boolean booked = result == DBProject.BookingResult.BOOKED;
+            written (sink, new String[] { "result", "firstBID", "lastBID" }, result.name (),
+                     booked ? String.valueOf (bIDs[0]) : null, booked ? String.valueOf (bIDs[nights - 1]) : null);
+         }
+      });
+   }
+
+   private Operations () {
+   }
+
+   private static void add (Operation op) {
+      OPERATIONS.put (op.name, op);
+      OPERATIONS.put (String.valueOf (op.number), op);
+   }//end add
+
+   /**
+    * Looks up an operation by name (e.g. bookRoom) or menu number.
+    *
+    * @return the operation, or null if there is none by that name
+    */
+   public static Operation get (String nameOrNumber) {
+      return OPERATIONS.get (nameOrNumber);
+   }//end get
+
+   /**
+    * @return the usage of every operation, one per line, in menu order
+    */
+   public static String usage () {
+      StringBuilder b = new StringBuilder ();
+      for (Map.Entry<String, Operation> e : OPERATIONS.entrySet ()) {
+         if (e.getKey ().equals (e.getValue ().name))
+            b.append (e.getValue ().number).append (". ").append (e.getValue ().usage ()).append ('\n');
+      }
+      return b.toString ();
+   }//end usage
+
+   /*
+    * Writes the one row result of a write and ends the sink.
+    */
+   private static void written (ResultSink sink, String[] names, String... row) throws IOException {
+      sink.row (names, row);
+      sink.end ();
+   }//end written
+
+   private static Date plusDays (Date d, int days) {
+      Calendar c = Calendar.getInstance ();
+      c.setTime (d);
+      c.add (Calendar.DATE, days);
+      return c.getTime ();
+   }//end plusDays
+
+}//end Operations
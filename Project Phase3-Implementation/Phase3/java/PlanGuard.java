@@ -0,0 +1,231 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Guards the plans of the menu queries against regressions.  Each
+ * query is explained with EXPLAIN (FORMAT JSON) and reduced to its shape, the
+ * plan nodes in order with their join type or aggregate strategy and table,
+ * e.g. "Hash Join[Anti] > Seq Scan(room) > Hash > Seq Scan(booking)", and
+ * the estimated total cost of its root.
+ *
+ * "record" writes these to a baseline file.  "check" compares against it and
+ * fails a query whose shape changed (a seq scan instead of an index scan, a
+ * hash join instead of a nested loop, ...) or whose cost grew by more than
+ * the allowed fraction.  Baselines only mean something for a fixed data set,
+ * e.g. one written by DataGenerator with a fixed seed and scale.
+ */
+public class PlanGuard {
+
+   // allowed growth of the estimated cost, 0.5 is +50%
+   private static final double COST_GROWTH = Double.parseDouble (System.getProperty ("dbproject.plans.costGrowth", "0.5"));
+
+   private static final String[] TABLES = {
+      "Hotel", "Staff", "Room", "Customer", "MaintenanceCompany", "Booking", "Repair", "Request", "Assigned",
+      "RepairsPerCompany", "RepairsPerRoomYear", "RoomsPerHotel", "RoomNightInventory",
+      "BookingArchive", "RepairArchive", "RequestArchive"
+   };
+
+   // a monthly partition, see sql/partitions.sql
+   private static final Pattern PARTITION = Pattern.compile ("_p[0-9]{6}$");
+
+   // the keys of a plan node that make up its shape, in document order
+   private static final Pattern NODE_KEYS =
+      Pattern.compile ("\"(Node Type|Join Type|Strategy|Relation Name|Total Cost)\":\\s*(\"([^\"]*)\"|[0-9.]+)");
+
+   /**
+    * The shape and root cost of one query plan.
+    */
+   static class Plan {
+      final String shape;
+      final double cost;
+
+      Plan (String shape, double cost) {
+         this.shape = shape;
+         this.cost = cost;
+      }
+   }//end Plan
+
+   private final DBProject _esql;
+   private final File _baselines;
+
+   public PlanGuard (DBProject esql, File baselines) {
+      this._esql = esql;
+      this._baselines = baselines;
+   }//end PlanGuard
+
+   /**
+    * Explains the menu queries and writes their plans as the new baselines.
+    *
+    * @throws java.lang.Exception when a query cannot be explained or the
+    *         file cannot be written
+    */
+   public void record () throws Exception {
+      Map<String, Plan> plans = explainAll ();
+      PrintWriter out = new PrintWriter (new FileWriter (_baselines));
+      try {
+         out.println ("# query\tcost\tshape, written by PlanGuard record");
+         for (Map.Entry<String, Plan> e : plans.entrySet ())
+            out.println (e.getKey () + "\t" + e.getValue ().cost + "\t" + e.getValue ().shape);
+      }finally {
+         out.close ();
+      }
+      for (Map.Entry<String, Plan> e : plans.entrySet ())
+         System.out.println (String.format ("%-42s %12.2f  %s", e.getKey (), e.getValue ().cost, e.getValue ().shape));
+      System.out.println ("Recorded " + plans.size () + " plans in " + _baselines);
+   }//end record
+
+   /**
+    * Explains the menu queries and compares their plans with the baselines.
+    *
+    * @return true if no plan changed shape or grew past the cost threshold
+    * @throws java.lang.Exception when a query cannot be explained or the
+    *         baselines cannot be read
+    */
+   public boolean check () throws Exception {
+      Map<String, Plan> baselines = readBaselines ();
+      Map<String, Plan> plans = explainAll ();
+      int failures = 0;
+      for (Map.Entry<String, Plan> e : plans.entrySet ()) {
+         String query = e.getKey ();
+         Plan now = e.getValue ();
+         Plan then = baselines.get (query);
+         if (then == null) {
+            System.out.println (String.format ("%-42s NEW      cost %.2f  %s", query, now.cost, now.shape));
+         }else if (!now.shape.equals (then.shape)) {
+            ++failures;
+            System.out.println (String.format ("%-42s CHANGED  cost %.2f -> %.2f", query, then.cost, now.cost));
+            System.out.println ("      was " + then.shape);
+            System.out.println ("      now " + now.shape);
+         }else if (now.cost > then.cost * (1 + COST_GROWTH)) {
+            ++failures;
+            System.out.println (String.format ("%-42s COSTLIER cost %.2f -> %.2f (+%.0f%%)", query, then.cost, now.cost,
+                                               100 * (now.cost / then.cost - 1)));
+         }else {
+            System.out.println (String.format ("%-42s OK       cost %.2f -> %.2f", query, then.cost, now.cost));
+         }
+      }//end for
+      System.out.println (failures == 0 ? "All plans match " + _baselines
+                                        : failures + " plans regressed against " + _baselines);
+      return failures == 0;
+   }//end check
+
+   /*
+    * Analyzes the tables, so the estimates reflect the data, and explains
+    * every menu query inside a transaction that is rolled back.
+    */
+   private Map<String, Plan> explainAll () throws SQLException {
+      Map<String, Plan> plans = new LinkedHashMap<String, Plan> ();
+      Connection conn = _esql.borrowConnection ();
+      boolean failed = true;
+      try {
+         Statement stmt = conn.createStatement ();
+         try {
+            for (String table : TABLES)
+               stmt.executeUpdate ("ANALYZE " + table);
+         }finally {
+            stmt.close ();
+         }
+         conn.setAutoCommit (false);
+         for (MenuQuery q : MenuQuery.sampled (conn))
+            plans.put (q.toString (), parse (explain (conn, q)));
+         conn.rollback ();
+         failed = false;
+      }finally {
+         _esql.releaseConnection (conn, failed);
+      }
+      return plans;
+   }//end explainAll
+
+   private static String explain (Connection conn, MenuQuery q) throws SQLException {
+      PreparedStatement stmt = conn.prepareStatement ("EXPLAIN (FORMAT JSON) " + q.sql);
+      try {
+         StatementCache.bind (stmt, q.params);
+         ResultSet rs = stmt.executeQuery ();
+         StringBuilder json = new StringBuilder ();
+         while (rs.next ())
+            json.append (rs.getString (1));
+         rs.close ();
+         return json.toString ();
+      }finally {
+         stmt.close ();
+      }
+   }//end explain
+
+   /*
+    * A node's own keys come before its "Plans", so the keys seen after a
+    * "Node Type" and before the next one belong to that node.  Monthly
+    * partitions (booking_p201505, ...) are named booking_p*, so a new month
+    * does not change the shape.
+    */
+   static Plan parse (String json) {
+      List<String> nodes = new ArrayList<String> ();
+      double cost = -1;
+      StringBuilder node = null;
+      Matcher m = NODE_KEYS.matcher (json);
+      while (m.find ()) {
+         String key = m.group (1);
+         String value = m.group (3) != null ? m.group (3) : m.group (2);
+         if (key.equals ("Node Type")) {
+            if (node != null)
+               nodes.add (node.toString ());
+            node = new StringBuilder (value);
+         }else if (key.equals ("Total Cost")) {
+            if (cost < 0)
+               cost = Double.parseDouble (value);
+         }else if (node != null && (key.equals ("Join Type") || key.equals ("Strategy"))) {
+            // inner joins and plain aggregates are the default, not shown
+            if (!value.equals ("Inner") && !value.equals ("Plain"))
+               node.append ('[').append (value).append (']');
+         }else if (node != null) {
+            node.append ('(').append (PARTITION.matcher (value.toLowerCase ()).replaceFirst ("_p*")).append (')');
+         }
+      }
+      if (node != null)
+         nodes.add (node.toString ());
+      StringBuilder shape = new StringBuilder ();
+      String last = null;
+      for (String n : nodes) {
+         // the scans of the partitions of a table read as one
+         if (n.equals (last) && n.contains ("_p*)"))
+            continue;
+         if (shape.length () > 0)
+            shape.append (" > ");
+         shape.append (n);
+         last = n;
+      }
+      return new Plan (shape.toString (), cost);
+   }//end parse
+
+   private Map<String, Plan> readBaselines () throws IOException {
+      Map<String, Plan> baselines = new LinkedHashMap<String, Plan> ();
+      BufferedReader in = new BufferedReader (new FileReader (_baselines));
+      try {
+         String line;
+         while ((line = in.readLine ()) != null) {
+            if (line.startsWith ("#") || line.trim ().isEmpty ())
+               continue;
+            String[] fields = line.split ("\t", 3);
+            baselines.put (fields[0], new Plan (fields[2], Double.parseDouble (fields[1])));
+         }
+      }finally {
+         in.close ();
+      }
+      return baselines;
+   }//end readBaselines
+
+}//end PlanGuard
@@ -0,0 +1,148 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, row and error counts of the statements DBProject runs, kept per
+ * menu operation.  The operation is a label set on the calling thread (the
+ * menu sets it before each choice, the workload driver before each
+ * operation); statements run without one count as "other".
+ *
+ * Statements slower than the threshold are appended to the slow query log
+ * with their SQL and bound parameters.  Recording costs two clock reads, a
+ * map lookup and a few atomic increments, so it is always on.
+ */
+public class QueryMetrics {
+
+   // statements at least this slow are logged, negative to log none
+   private static final long SLOW_MILLIS = Long.getLong ("dbproject.slowQueryMillis", 500L);
+
+   // file the slow statements are appended to, "-" for standard error
+   private static final String SLOW_LOG = System.getProperty ("dbproject.slowQueryLog", "slow-query.log");
+
+   private static final String OTHER = "other";
+
+   private static final ThreadLocal<String> OPERATION = new ThreadLocal<String> ();
+
+   /**
+    * Counters of one operation.
+    */
+   static class Counters {
+      final LatencyHistogram latency = new LatencyHistogram ();
+      final AtomicLong rows = new AtomicLong ();
+      final AtomicLong errors = new AtomicLong ();
+      final AtomicLong slow = new AtomicLong ();
+   }//end Counters
+
+   private final ConcurrentHashMap<String, Counters> _operations = new ConcurrentHashMap<String, Counters> ();
+   private final long _slowNanos = SLOW_MILLIS < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos (SLOW_MILLIS);
+   private PrintWriter _slowLog = null;
+
+   /**
+    * Labels the statements the current thread runs from now on.
+    *
+    * @param operation the menu operation name, or null to clear the label
+    */
+   public static void setOperation (String operation) {
+      if (operation == null)
+         OPERATION.remove ();
+      else
+         OPERATION.set (operation);
+   }//end setOperation
+
+   /**
+    * Records one statement under the current thread's operation.
+    *
+    * @param sql the statement text
+    * @param params the bound parameters
+    * @param nanos how long the statement took
+    * @param rows the rows returned or changed, ignored if it failed
+    * @param failed true if the statement threw
+    */
+   public void record (String sql, Object[] params, long nanos, long rows, boolean failed) {
+      String operation = OPERATION.get ();
+      if (operation == null)
+         operation = OTHER;
+      Counters c = _operations.get (operation);
+      if (c == null) {
+         Counters created = new Counters ();
+         c = _operations.putIfAbsent (operation, created);
+         if (c == null)
+            c = created;
+      }
+      c.latency.record (nanos);
+      if (failed)
+         c.errors.incrementAndGet ();
+      else
+         c.rows.addAndGet (rows);
+      if (nanos >= _slowNanos) {
+         c.slow.incrementAndGet ();
+         logSlow (operation, sql, params, nanos, rows, failed);
+      }
+   }//end record
+
+   /**
+    * @return one line per operation with its call, row, error and slow
+    *         statement counts and latency percentiles, by name
+    */
+   public String summary () {
+      List<String> names = new ArrayList<String> (_operations.keySet ());
+      Collections.sort (names);
+      StringBuilder sb = new StringBuilder ();
+      sb.append (String.format ("%-36s %9s %11s %7s %6s %9s %9s %9s %9s%n",
+         "operation", "calls", "rows", "errors", "slow", "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)"));
+      for (String name : names) {
+         Counters c = _operations.get (name);
+         LatencyHistogram h = c.latency;
+         sb.append (String.format ("%-36s %9d %11d %7d %6d %9.3f %9.3f %9.3f %9.3f%n",
+            name, h.getCount (), c.rows.get (), c.errors.get (), c.slow.get (),
+            LatencyHistogram.millis (h.getPercentile (50)), LatencyHistogram.millis (h.getPercentile (99)),
+            LatencyHistogram.millis (h.getPercentile (99.9)), LatencyHistogram.millis (h.getMax ())));
+      }
+      if (SLOW_MILLIS >= 0)
+         sb.append ("Statements slower than " + SLOW_MILLIS + " ms are logged to " + SLOW_LOG);
+      return sb.toString ();
+   }//end summary
+
+   private synchronized void logSlow (String operation, String sql, Object[] params, long nanos,
+                                      long rows, boolean failed) {
+      try {
+         if (_slowLog == null)
+            _slowLog = SLOW_LOG.equals ("-") ? new PrintWriter (System.err)
+                                             : new PrintWriter (new FileWriter (SLOW_LOG, true));
+      }catch (IOException e) {
+         System.err.println ("Cannot open slow query log " + SLOW_LOG + ": " + e.getMessage ());
+         _slowLog = new PrintWriter (System.err);
+      }
+      StringBuilder line = new StringBuilder ();
+      line.append (new SimpleDateFormat ("yyyy-MM-dd HH:mm:ss.SSS").format (new Date ()))
+          .append (' ').append (operation)
+          .append (String.format (" %.3f ms ", LatencyHistogram.millis (nanos)))
+          .append (failed ? "failed" : rows + " rows")
+          .append (" | ").append (sql)
+          .append (" | [");
+      for (int i = 0; params != null && i < params.length; ++i) {
+         if (i > 0)
+            line.append (", ");
+         Object p = params[i];
+         if (p instanceof String)
+            line.append ('\'').append (p).append ('\'');
+         else if (p instanceof Date)
+            line.append (new SimpleDateFormat ("yyyy-MM-dd").format ((Date) p));
+         else
+            line.append (p);
+      }
+      line.append (']');
+      _slowLog.println (line);
+      _slowLog.flush ();
+   }//end logSlow
+
+}//end QueryMetrics
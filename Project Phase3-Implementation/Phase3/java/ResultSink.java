@@ -0,0 +1,338 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders query results to a writer.  A sink reads the column metadata once
+ * when the first row arrives, copies every row into a reused value buffer
+ * and writes it in its own format (tab separated, aligned table, CSV or one
+ * JSON object per line).
+ *
+ * A sink is used for one query and is not thread safe.  The writer should be
+ * buffered; the sink only flushes it in {@link #end()}.
+ */
+public abstract class ResultSink {
+
+   protected final Writer out;
+
+   // column metadata, read once on the first row
+   protected String[] columns = null;
+   // values of the current row, reused for every row
+   protected String[] values = null;
+
+   protected ResultSink (Writer out) {
+      this.out = out;
+   }//end ResultSink
+
+   /**
+    * Creates a sink by format name.
+    *
+    * @param format one of tsv, table, csv, json or none
+    * @param out the writer the rows are rendered to
+    * @return the sink for that format
+    */
+   public static ResultSink create (String format, Writer out) {
+      if ("tsv".equalsIgnoreCase (format))
+         return new Tsv (out);
+      if ("table".equalsIgnoreCase (format))
+         return new Table (out);
+      if ("csv".equalsIgnoreCase (format))
+         return new Csv (out);
+      if ("json".equalsIgnoreCase (format))
+         return new JsonLines (out);
+      if ("none".equalsIgnoreCase (format))
+         return new Discard ();
+      throw new IllegalArgumentException ("Unknown result format: " + format);
+   }//end create
+
+   /**
+    * @return true once the first row has been written
+    */
+   public boolean isStarted () {
+      return columns != null;
+   }//end isStarted
+
+   /**
+    * @return the values of the last row written, null before the first row
+    */
+   public String[] getLastRow () {
+      return values;
+   }//end getLastRow
+
+   /**
+    * Writes the current row of the result set, reading the column metadata
+    * first if this is the first row.
+    *
+    * @param rs a result set positioned on a row
+    * @throws java.sql.SQLException when reading the row fails
+    * @throws java.io.IOException when writing the row fails
+    */
+   public void row (ResultSet rs) throws SQLException, IOException {
+      if (columns == null) {
+         ResultSetMetaData rsmd = rs.getMetaData ();
+         columns = new String[rsmd.getColumnCount ()];
+         for (int i = 0; i < columns.length; ++i)
+            columns[i] = rsmd.getColumnName (i + 1);
+         values = new String[columns.length];
+         header ();
+      }
+      for (int i = 0; i < values.length; ++i)
+         values[i] = rs.getString (i + 1);
+      writeRow ();
+   }//end row
+
+   /**
+    * Writes a row that does not come from a query, such as the key a write
+    * added, taking the column names first if this is the first row.
+    *
+    * @param names the column names
+    * @param row the values, one per column
+    * @throws java.io.IOException when writing the row fails
+    */
+   public void row (String[] names, String... row) throws IOException {
+      if (columns == null) {
+         columns = names.clone ();
+         values = new String[columns.length];
+         header ();
+      }
+      System.arraycopy (row, 0, values, 0, values.length);
+      writeRow ();
+   }//end row
+
+   /**
+    * Finishes the output and flushes the writer.
+    *
+    * @throws java.io.IOException when writing fails
+    */
+   public void end () throws IOException {
+      out.flush ();
+   }//end end
+
+   /*
+    * Called once, after columns is filled in and before the first row.
+    */
+   protected abstract void header () throws IOException;
+
+   /*
+    * Writes the row held in values.
+    */
+   protected abstract void writeRow () throws IOException;
+
+   /**
+    * Tab separated columns, the format the menu has always printed.
+    */
+   public static class Tsv extends ResultSink {
+      public Tsv (Writer out) {
+         super (out);
+      }
+
+      protected void header () throws IOException {
+         writeLine (columns);
+      }
+
+      protected void writeRow () throws IOException {
+         writeLine (values);
+      }
+
+      private void writeLine (String[] fields) throws IOException {
+         for (int i = 0; i < fields.length; ++i) {
+            out.write (String.valueOf (fields[i]));
+            out.write ('\t');
+         }
+         out.write ('\n');
+      }
+   }//end Tsv
+
+   /**
+    * Columns padded to a common width.  Rows are held back in windows of
+    * <code>WINDOW</code> rows so the widths fit the data without buffering
+    * the whole result.
+    */
+   public static class Table extends ResultSink {
+      private static final int WINDOW = 500;
+      private final List<String[]> _pending = new ArrayList<String[]> (WINDOW);
+      private int[] _widths;
+      private boolean _headerWritten = false;
+
+      public Table (Writer out) {
+         super (out);
+      }
+
+      protected void header () {
+         _widths = new int[columns.length];
+         widen (columns);
+      }
+
+      protected void writeRow () throws IOException {
+         String[] copy = values.clone ();
+         widen (copy);
+         _pending.add (copy);
+         if (_pending.size () == WINDOW)
+            drain ();
+      }
+
+      public void end () throws IOException {
+         if (columns != null)
+            drain ();
+         super.end ();
+      }
+
+      private void widen (String[] fields) {
+         for (int i = 0; i < fields.length; ++i) {
+            int len = String.valueOf (fields[i]).length ();
+            if (len > _widths[i])
+               _widths[i] = len;
+         }
+      }
+
+      private void drain () throws IOException {
+         if (!_headerWritten) {
+            writeLine (columns);
+            for (int i = 0; i < _widths.length; ++i) {
+               if (i > 0)
+                  out.write ("-+-");
+               pad ("", _widths[i], '-');
+            }
+            out.write ('\n');
+            _headerWritten = true;
+         }
+         for (String[] r : _pending)
+            writeLine (r);
+         _pending.clear ();
+      }
+
+      private void writeLine (String[] fields) throws IOException {
+         for (int i = 0; i < fields.length; ++i) {
+            if (i > 0)
+               out.write (" | ");
+            pad (String.valueOf (fields[i]), _widths[i], ' ');
+         }
+         out.write ('\n');
+      }
+
+      private void pad (String s, int width, char fill) throws IOException {
+         out.write (s);
+         for (int n = s.length (); n < width; ++n)
+            out.write (fill);
+      }
+   }//end Table
+
+   /**
+    * Comma separated values, quoted where needed.  SQL NULL is written as an
+    * empty field.
+    */
+   public static class Csv extends ResultSink {
+      public Csv (Writer out) {
+         super (out);
+      }
+
+      protected void header () throws IOException {
+         writeLine (columns);
+      }
+
+      protected void writeRow () throws IOException {
+         writeLine (values);
+      }
+
+      private void writeLine (String[] fields) throws IOException {
+         for (int i = 0; i < fields.length; ++i) {
+            if (i > 0)
+               out.write (',');
+            String f = fields[i];
+            if (f == null)
+               continue;
+            if (f.indexOf (',') < 0 && f.indexOf ('"') < 0 && f.indexOf ('\n') < 0 && f.indexOf ('\r') < 0) {
+               out.write (f);
+            }else {
+               out.write ('"');
+               for (int c = 0; c < f.length (); ++c) {
+                  char ch = f.charAt (c);
+                  if (ch == '"')
+                     out.write ('"');
+                  out.write (ch);
+               }
+               out.write ('"');
+            }
+         }
+         out.write ('\n');
+      }
+   }//end Csv
+
+   /**
+    * One JSON object per row, keyed by column name.
+    */
+   public static class JsonLines extends ResultSink {
+      public JsonLines (Writer out) {
+         super (out);
+      }
+
+      protected void header () {
+         // column names are written with every row
+      }
+
+      protected void writeRow () throws IOException {
+         out.write ('{');
+         for (int i = 0; i < values.length; ++i) {
+            if (i > 0)
+               out.write (',');
+            writeString (out, columns[i]);
+            out.write (':');
+            if (values[i] == null)
+               out.write ("null");
+            else
+               writeString (out, values[i]);
+         }
+         out.write ("}\n");
+      }
+   }//end JsonLines
+
+   /**
+    * Reads every row and writes nothing, for callers that only want the row
+    * count and timings.
+    */
+   public static class Discard extends ResultSink {
+      public Discard () {
+         super (null);
+      }
+
+      protected void header () {
+      }
+
+      protected void writeRow () {
+      }
+
+      public void end () {
+      }
+   }//end Discard
+
+   /**
+    * Writes a string as a quoted JSON string literal.
+    */
+   public static void writeString (Writer out, String s) throws IOException {
+      out.write ('"');
+      for (int i = 0; i < s.length (); ++i) {
+         char c = s.charAt (i);
+         switch (c) {
+            case '"': out.write ("\\\""); break;
+            case '\\': out.write ("\\\\"); break;
+            case '\n': out.write ("\\n"); break;
+            case '\r': out.write ("\\r"); break;
+            case '\t': out.write ("\\t"); break;
+            default:
+               if (c < 0x20) {
+                  out.write ("\\u00");
+                  out.write (Character.forDigit (c >> 4, 16));
+                  out.write (Character.forDigit (c & 0xf, 16));
+               }else {
+                  out.write (c);
+               }
+         }
+      }
+      out.write ('"');
+   }//end writeString
+
+}//end ResultSink
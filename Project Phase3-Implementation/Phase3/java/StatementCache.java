@@ -0,0 +1,192 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.postgresql.PGStatement;
+
+/**
+ * A least recently used cache of prepared statements for one physical
+ * connection.  Statements are keyed by their SQL text, so an operation that
+ * runs the same parameterized SQL again reuses the statement that is already
+ * prepared.  Once a statement has been executed <code>serverPrepareThreshold</code>
+ * times it is switched to a server side prepared plan, which saves Postgres
+ * from parsing and planning the query on every call.
+ *
+ * A cache belongs to exactly one connection and must only be used by the
+ * thread that currently holds that connection.
+ */
+public class StatementCache {
+
+   private final Connection _connection;
+   private final int _capacity;
+   private final int _serverPrepareThreshold;
+
+   // cached statements in access order, least recently used first
+   private final LinkedHashMap<String, Cached> _statements;
+
+   // statistics
+   private long _hits = 0;
+   private long _misses = 0;
+   private long _evictions = 0;
+
+   /**
+    * A prepared statement and the number of times it has been executed.
+    */
+   private static class Cached {
+      final PreparedStatement statement;
+      int executions = 0;
+
+      Cached (PreparedStatement statement) {
+         this.statement = statement;
+      }
+   }//end Cached
+
+   /**
+    * Creates a cache for the given connection.
+    *
+    * @param connection the connection the statements are prepared on
+    * @param capacity the maximum number of statements kept open
+    * @param serverPrepareThreshold executions after which a statement uses a
+    *        server side prepared plan, or 0 to never switch
+    */
+   public StatementCache (Connection connection, int capacity, int serverPrepareThreshold) {
+      this._connection = connection;
+      this._capacity = capacity;
+      this._serverPrepareThreshold = serverPrepareThreshold;
+      this._statements = new LinkedHashMap<String, Cached> (16, 0.75f, true);
+   }//end StatementCache
+
+   /**
+    * Creates a cache configured from the <code>dbproject.stmtCache.*</code>
+    * system properties (size, serverPrepareThreshold).
+    */
+   public static StatementCache fromSystemProperties (Connection connection) {
+      return new StatementCache (connection,
+                                 Integer.getInteger ("dbproject.stmtCache.size", 32),
+                                 Integer.getInteger ("dbproject.stmtCache.serverPrepareThreshold", 5));
+   }//end fromSystemProperties
+
+   /**
+    * Returns a prepared statement for the SQL text with the parameters bound,
+    * preparing it if it is not cached yet.  The caller must not close the
+    * returned statement.
+    *
+    * @param sql the SQL text with '?' placeholders
+    * @param params the parameter values, in placeholder order
+    * @return the prepared statement ready to execute
+    * @throws java.sql.SQLException when preparing or binding fails
+    */
+   public PreparedStatement prepare (String sql, Object... params) throws SQLException {
+      return prepare (sql, true, params);
+   }//end prepare
+
+   /**
+    * Returns a prepared statement that declares a server side cursor over the
+    * query with the parameters bound.  Cursor declarations are never switched
+    * to server side prepared plans since Postgres cannot PREPARE a DECLARE.
+    *
+    * @param cursor the name of the cursor to declare
+    * @param query the SELECT the cursor iterates, with '?' placeholders
+    * @param params the parameter values, in placeholder order
+    * @return the prepared DECLARE statement ready to execute
+    * @throws java.sql.SQLException when preparing or binding fails
+    */
+   public PreparedStatement prepareCursor (String cursor, String query, Object... params) throws SQLException {
+      return prepare ("DECLARE " + cursor + " NO SCROLL CURSOR FOR " + query, false, params);
+   }//end prepareCursor
+
+   private PreparedStatement prepare (String sql, boolean serverPrepare, Object... params) throws SQLException {
+      Cached cached = _statements.get (sql);
+      if (cached == null) {
+         ++_misses;
+         cached = new Cached (_connection.prepareStatement (sql));
+         _statements.put (sql, cached);
+         evictOverflow ();
+      }else {
+         ++_hits;
+         cached.statement.clearParameters ();
+      }
+      if (++cached.executions == _serverPrepareThreshold && serverPrepare
+          && cached.statement instanceof PGStatement) {
+         ((PGStatement) cached.statement).setUseServerPrepare (true);
+      }
+      bind (cached.statement, params);
+      return cached.statement;
+   }//end prepare
+
+   /**
+    * Binds the parameter values to the statement using the JDBC setter that
+    * matches each value's type.
+    *
+    * @param stmt the statement to bind
+    * @param params the parameter values, in placeholder order
+    * @throws java.sql.SQLException when a value cannot be bound
+    */
+   public static void bind (PreparedStatement stmt, Object... params) throws SQLException {
+      for (int i = 0; i < params.length; ++i) {
+         Object p = params[i];
+         int idx = i + 1;
+         if (p == null)
+            stmt.setNull (idx, Types.VARCHAR);
+         else if (p instanceof String)
+            stmt.setString (idx, (String) p);
+         else if (p instanceof Integer)
+            stmt.setInt (idx, ((Integer) p).intValue ());
+         else if (p instanceof Long)
+            stmt.setLong (idx, ((Long) p).longValue ());
+         else if (p instanceof BigDecimal)
+            stmt.setBigDecimal (idx, (BigDecimal) p);
+         else if (p instanceof Double)
+            stmt.setDouble (idx, ((Double) p).doubleValue ());
+         else if (p instanceof Boolean)
+            stmt.setBoolean (idx, ((Boolean) p).booleanValue ());
+         else if (p instanceof java.sql.Date)
+            stmt.setDate (idx, (java.sql.Date) p);
+         else if (p instanceof java.util.Date)
+            stmt.setDate (idx, new java.sql.Date (((java.util.Date) p).getTime ()));
+         else
+            stmt.setObject (idx, p);
+      }//end for
+   }//end bind
+
+   /**
+    * Closes every cached statement.
+    */
+   public void close () {
+      for (Cached c : _statements.values ())
+         closeQuietly (c.statement);
+      _statements.clear ();
+   }//end close
+
+   /**
+    * @return a one line summary of the cache counters
+    */
+   public String getStatistics () {
+      return "stmtCache[size=" + _statements.size () + ", capacity=" + _capacity
+           + ", hits=" + _hits + ", misses=" + _misses + ", evictions=" + _evictions + "]";
+   }//end getStatistics
+
+   private void evictOverflow () {
+      Iterator<Map.Entry<String, Cached>> it = _statements.entrySet ().iterator ();
+      while (_statements.size () > _capacity && it.hasNext ()) {
+         Cached eldest = it.next ().getValue ();
+         it.remove ();
+         ++_evictions;
+         closeQuietly (eldest.statement);
+      }
+   }//end evictOverflow
+
+   private static void closeQuietly (PreparedStatement stmt) {
+      try {
+         stmt.close ();
+      }catch (SQLException e) {
+         // ignored.
+      }
+   }//end closeQuietly
+
+}//end StatementCache
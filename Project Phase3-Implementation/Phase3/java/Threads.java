@@ -0,0 +1,65 @@
+import java.lang.reflect.Method;
+
+/**
+ * Starts threads for work that spends most of its time waiting on the
+ * database.  On a JVM with virtual threads (Java 21 and later) they are
+ * virtual threads, otherwise daemon platform threads.  The project compiles
+ * for Java 7, so the virtual thread API is looked up by reflection.
+ */
+public class Threads {
+
+   // Thread.ofVirtual() and Thread.Builder.name / start, null before Java 21
+   private static final Method OF_VIRTUAL;
+   private static final Method NAME;
+   private static final Method START;
+
+   static {
+      Method ofVirtual = null, name = null, start = null;
+      if (!Boolean.getBoolean ("dbproject.platformThreads")) {
+         try {
+            Class<?> builder = Class.forName ("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod ("ofVirtual");
+            name = builder.getMethod ("name", String.class);
+            start = builder.getMethod ("start", Runnable.class);
+         }catch (Exception e) {
+            ofVirtual = null;
+         }
+      }
+      OF_VIRTUAL = ofVirtual;
+      NAME = name;
+      START = start;
+   }
+
+   private Threads () {
+   }
+
+   /**
+    * @return true if threads started here are virtual threads
+    */
+   public static boolean isVirtual () {
+      return OF_VIRTUAL != null;
+   }//end isVirtual
+
+   /**
+    * Starts a thread running the task.
+    *
+    * @param name the thread name
+    * @param task the work to run
+    * @return the started thread
+    */
+   public static Thread start (String name, Runnable task) {
+      if (OF_VIRTUAL != null) {
+         try {
+            Object builder = NAME.invoke (OF_VIRTUAL.invoke (null), name);
+            return (Thread) START.invoke (builder, task);
+         }catch (Exception e) {
+            throw new IllegalStateException ("Cannot start virtual thread " + name, e);
+         }
+      }
+      Thread t = new Thread (task, name);
+      t.setDaemon (true);
+      t.start ();
+      return t;
+   }//end start
+
+}//end Threads
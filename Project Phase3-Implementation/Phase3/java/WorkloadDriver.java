@@ -0,0 +1,488 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drives the menu operations from many simulated front desks at once,
+ * without the menu.  Every desk picks operations at random according to the
+ * mix and runs them with random keys sampled from the database, through the
+ * same pool, statement cache and SQL as the menu.
+ *
+ * Desks start one after the other over the ramp-up period; only operations
+ * started after it are measured.  With a target rate the desks are paced
+ * together to that many operations per second and latency is measured from
+ * the time an operation was due, not when it actually started, so a stalled
+ * system is not hidden by desks that fell behind.  Without a rate every desk
+ * issues its next operation as soon as the last one returns.
+ *
+ * Desks run on virtual threads when the JVM has them (see {@link Threads}).
+ */
+public class WorkloadDriver {
+
+   // operation weights, by operation name or group (writes, bookings, queries, reports)
+   private static final String MIX =
+      System.getProperty ("dbproject.workload.mix", "bookRoom=60,numberOfAvailableRooms=30,reports=10");
+
+   // operations per second over all desks, 0 for as fast as possible
+   private static final double RATE = Double.parseDouble (System.getProperty ("dbproject.workload.rate", "0"));
+
+   // seconds over which the desks are started, not measured
+   private static final int RAMP_UP = Integer.getInteger ("dbproject.workload.rampUp", 10);
+
+   // seed of the desks' random choices
+   private static final long SEED = Long.getLong ("dbproject.workload.seed", 166L);
+
+   // keys sampled per table to draw operation parameters from
+   private static final int SAMPLES = Integer.getInteger ("dbproject.workload.samples", 10000);
+
+   private static final long DAY = TimeUnit.DAYS.toMillis (1);
+
+   private final DBProject _esql;
+
+   // sampled keys
+   private int[][] _rooms;         // hotelID, roomNo
+   private Object[][] _customers;  // customerID, fName, lName
+   private Object[][] _companies;  // cmpID, name
+   private int[] _managers;
+   private int[] _cleaners;
+   private int[] _repairs;
+   private final AtomicInteger _nextRoomNo = new AtomicInteger ();
+
+   // noon of the first day of the dates queried, and of today for bookings
+   private final long _firstDay = new GregorianCalendar (2000, Calendar.JANUARY, 1, 12, 0).getTimeInMillis ();
+   private final long _today;
+
+   /**
+    * One menu operation with its counters.
+    */
+   abstract class Operation {
+      final String name;
+      final boolean write;
+      // the menu operation's admission class, e.g. AdmissionControl.REPORTS
+      final String group;
+      final LatencyHistogram latency = new LatencyHistogram ();
+      final AtomicLong errors = new AtomicLong ();
+      final AtomicLong conflicts = new AtomicLong ();
+      final AtomicReference<String> firstError = new AtomicReference<String> ();
+
+      Operation (String name, boolean write) {
+         this.name = name;
+         this.write = write;
+         this.group = Operations.get (name).admissionClass;
+      }
+
+      /*
+       * Runs the operation once, returning false when it was refused for a
+       * business reason (the room night is taken).
+       */
+      abstract boolean run (Random r) throws SQLException;
+   }//end Operation
+
+   /**
+    * A read-only menu operation; its rows are read and dropped.
+    */
+   abstract class Query extends Operation {
+      final String sql;
+
+      Query (String name, String sql) {
+         super (name, false);
+         this.sql = sql;
+      }
+
+      abstract Object[] params (Random r);
+
+      boolean run (Random r) throws SQLException {
+         _esql.executeQuery (new ResultSink.Discard (), sql, params (r));
+         return true;
+      }
+   }//end Query
+
+   public WorkloadDriver (DBProject esql) {
+      this._esql = esql;
+      Calendar c = Calendar.getInstance ();
+      c.set (Calendar.HOUR_OF_DAY, 12);
+      this._today = c.getTimeInMillis ();
+   }//end WorkloadDriver
+
+   /**
+    * Runs the workload and prints throughput and latency per operation.
+    *
+    * @param desks the number of desks working at once
+    * @param seconds how long to measure, after the ramp-up
+    * @throws java.lang.Exception when the sample keys cannot be read or the
+    *         driver is interrupted
+    */
+   public void run (int desks, int seconds) throws Exception {
+      sample ();
+      List<Operation> operations = operations ();
+      final Operation[] picks = new Operation[operations.size ()];
+      final double[] cumulative = new double[picks.length];
+      weights (operations, picks, cumulative);
+
+      final long start = System.nanoTime () + TimeUnit.MILLISECONDS.toNanos (100);
+      final long measureFrom = start + TimeUnit.SECONDS.toNanos (RAMP_UP);
+      final long end = measureFrom + TimeUnit.SECONDS.toNanos (seconds);
+      final long interval = RATE > 0 ? (long) (1e9 * desks / RATE) : 0;
+      final CountDownLatch done = new CountDownLatch (desks);
+
+      System.out.println (String.format ("Running %d desks (%s threads) for %d s after %d s ramp-up, %s, mix %s",
+         desks, Threads.isVirtual () ? "virtual" : "platform", seconds, RAMP_UP,
+         RATE > 0 ? RATE + " ops/s" : "unpaced", MIX));
+      for (int d = 0; d < desks; ++d) {
+         final long first = start + TimeUnit.SECONDS.toNanos (RAMP_UP) * d / desks;
+         final Random random = new Random (SEED + d);
+         Threads.start ("desk-" + d, new Runnable () {
+            public void run () {
+               try {
+                  desk (random, picks, cumulative, first, measureFrom, end, interval);
+               }finally {
+                  done.countDown ();
+               }
+            }
+         });
+      }
+      done.await ();
+      report (operations, seconds);
+      System.out.println (_esql.getQueryStatistics ());
+   }//end run
+
+   /*
+    * The loop of one desk.  When paced, every operation is due interval ns
+    * after the previous one was due, whether or not that one was late.
+    */
+   private void desk (Random random, Operation[] picks, double[] cumulative, long first,
+                      long measureFrom, long end, long interval) {
+      double total = cumulative[cumulative.length - 1];
+      long due = first;
+      while (true) {
+         long now = System.nanoTime ();
+         if (interval == 0 && due < now)
+            due = now;
+         if (due > now) {
+            try {
+               TimeUnit.NANOSECONDS.sleep (due - now);
+            }catch (InterruptedException e) {
+               return;
+            }
+         }
+         if (due >= end)
+            return;
+
+         double x = random.nextDouble () * total;
+         int i = 0;
+         while (cumulative[i] <= x && i < cumulative.length - 1)
+            ++i;
+         Operation op = picks[i];
+         QueryMetrics.setOperation (op.name);
+         try {
+            if (!op.run (random))
+               op.conflicts.incrementAndGet ();
+         }catch (SQLException e) {
+            op.errors.incrementAndGet ();
+            op.firstError.compareAndSet (null, e.getMessage ());
+         }
+         if (due >= measureFrom)
+            op.latency.record (System.nanoTime () - due);
+         if (interval > 0)
+            due += interval;
+      }//end while
+   }//end desk
+
+   private void report (List<Operation> operations, int seconds) {
+      LatencyHistogram all = new LatencyHistogram ();
+      long errors = 0, conflicts = 0;
+      System.out.println (String.format ("%-36s %9s %9s %7s %9s %9s %9s %9s %9s",
+         "operation", "ops", "ops/s", "errors", "conflicts", "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)"));
+      for (Operation op : operations) {
+         if (op.latency.getCount () == 0 && op.errors.get () == 0)
+            continue;
+         print (op.name, op.latency, op.errors.get (), op.conflicts.get (), seconds);
+         all.add (op.latency);
+         errors += op.errors.get ();
+         conflicts += op.conflicts.get ();
+      }
+      print ("total", all, errors, conflicts, seconds);
+      for (Operation op : operations) {
+         if (op.firstError.get () != null)
+            System.out.println (op.name + ": " + op.errors.get () + " errors, first: " + op.firstError.get ());
+      }
+      System.out.println (_esql.getPoolStatistics ());
+   }//end report
+
+   private static void print (String name, LatencyHistogram h, long errors, long conflicts, int seconds) {
+      System.out.println (String.format ("%-36s %9d %9.1f %7d %9d %9.3f %9.3f %9.3f %9.3f",
+         name, h.getCount (), h.getCount () / (double) seconds, errors, conflicts,
+         LatencyHistogram.millis (h.getPercentile (50)), LatencyHistogram.millis (h.getPercentile (99)),
+         LatencyHistogram.millis (h.getPercentile (99.9)), LatencyHistogram.millis (h.getMax ())));
+   }//end print
+
+   /*
+    * Spreads the weights of the mix over the operations, a group's weight
+    * evenly over its members, and fills in the cumulative weights.  The
+    * groups are the admission classes of the menu operations, except that
+    * writes also takes in the bookings.
+    */
+   private static void weights (List<Operation> operations, Operation[] picks, double[] cumulative) {
+      Map<String, Double> weight = new LinkedHashMap<String, Double> ();
+      for (String part : MIX.split (",")) {
+         String[] kv = part.trim ().split ("=");
+         if (kv.length != 2)
+            throw new IllegalArgumentException ("Expected <operation>=<weight> in mix: " + part);
+         List<Operation> members = new ArrayList<Operation> ();
+         for (Operation op : operations) {
+            if (op.name.equals (kv[0]) || op.group.equals (kv[0])
+                || kv[0].equals (AdmissionControl.WRITES) && op.write)
+               members.add (op);
+         }
+         if (members.isEmpty ())
+            throw new IllegalArgumentException ("Unknown operation in mix: " + kv[0]);
+         double w = Double.parseDouble (kv[1]) / members.size ();
+         for (Operation op : members) {
+            Double before = weight.get (op.name);
+            weight.put (op.name, (before == null ? 0 : before) + w);
+         }
+      }
+      double total = 0;
+      for (int i = 0; i < picks.length; ++i) {
+         Operation op = operations.get (i);
+         Double w = weight.get (op.name);
+         total += w == null ? 0 : w;
+         picks[i] = op;
+         cumulative[i] = total;
+      }
+      if (total <= 0)
+         throw new IllegalArgumentException ("The mix has no weight: " + MIX);
+   }//end weights
+
+   /*
+    * The operations in menu order.
+    */
+   private List<Operation> operations () {
+      List<Operation> ops = new ArrayList<Operation> ();
+      ops.add (new Operation ("addCustomer", true) {
+         boolean run (Random r) throws SQLException {
+            _esql.executeUpdate (DBProject.ADD_CUSTOMER_SQL, _esql.nextId (IdAllocator.CUSTOMER),
+               "load", "load", "load", 5550100L + r.nextInt (1000), day (r), "Other");
+            return true;
+         }
+      });
+      ops.add (new Operation ("addRoom", true) {
+         boolean run (Random r) throws SQLException {
+            int[] room = pick (r, _rooms);
+            _esql.executeUpdate (DBProject.ADD_ROOM_SQL, room[0], _nextRoomNo.incrementAndGet (), "Suite");
+            return true;
+         }
+      });
+      ops.add (new Operation ("addMaintenanceCompany", true) {
+         boolean run (Random r) throws SQLException {
+            _esql.executeUpdate (DBProject.ADD_MAINTENANCE_COMPANY_SQL,
+               _esql.nextId (IdAllocator.MAINTENANCE_COMPANY), "load", "load", Boolean.TRUE);
+            return true;
+         }
+      });
+      ops.add (new Operation ("addRepair", true) {
+         boolean run (Random r) throws SQLException {
+            int[] room = pick (r, _rooms);
+            _esql.executeUpdate (DBProject.ADD_REPAIR_SQL, _esql.nextId (IdAllocator.REPAIR),
+               room[0], room[1], pick (r, _companies)[0], day (r), "load", "Small");
+            return true;
+         }
+      });
+      ops.add (new Operation ("bookRoom", true) {
+         boolean run (Random r) throws SQLException {
+            int[] room = pick (r, _rooms);
+            Date date = new Date (_today + r.nextInt (365) * DAY);
+            return _esql.reserveRoom (_esql.nextId (IdAllocator.BOOKING), (Integer) pick (r, _customers)[0],
+               room[0], room[1], date, 1 + r.nextInt (3), 100 + r.nextInt (1900)) == DBProject.BookingResult.BOOKED;
+         }
+      });
+      ops.add (new Operation ("assignHouseCleaningToRoom", true) {
+         boolean run (Random r) throws SQLException {
+            int[] room = pick (r, _rooms);
+            _esql.executeUpdate (DBProject.ASSIGN_HOUSE_CLEANING_SQL, _esql.nextId (IdAllocator.ASSIGNED),
+               _cleaners[r.nextInt (_cleaners.length)], room[0], room[1]);
+            return true;
+         }
+      });
+      ops.add (new Operation ("repairRequest", true) {
+         boolean run (Random r) throws SQLException {
+            _esql.executeUpdate (DBProject.REPAIR_REQUEST_SQL, _esql.nextId (IdAllocator.REQUEST),
+               _managers[r.nextInt (_managers.length)], _repairs[r.nextInt (_repairs.length)], day (r), "load");
+            return true;
+         }
+      });
+      ops.add (new Query ("numberOfAvailableRooms", DBProject.AVAILABLE_ROOMS_SQL) {
+         Object[] params (Random r) {
+            return new Object[] { day (r), pick (r, _rooms)[0] };
+         }
+      });
+      ops.add (new Query ("numberOfBookedRooms", DBProject.BOOKED_ROOMS_SQL) {
+         Object[] params (Random r) {
+            return new Object[] { day (r), pick (r, _rooms)[0] };
+         }
+      });
+      ops.add (new Query ("listHotelRoomBookingsForAWeek", DBProject.ROOMS_FREE_FOR_A_WEEK_SQL) {
+         Object[] params (Random r) {
+            int hotel = pick (r, _rooms)[0];
+            Date from = day (r);
+            return new Object[] { hotel, hotel, from, new Date (from.getTime () + 7 * DAY) };
+         }
+      });
+      ops.add (new Query ("topKHighestRoomPriceForADateRange", DBProject.TOP_K_ROOM_PRICE_SQL) {
+         Object[] params (Random r) {
+            Date from = day (r);
+            return new Object[] { from, new Date (from.getTime () + 30 * DAY), 10 };
+         }
+      });
+      ops.add (new Query ("topKHighestPriceBookingsForACustomer", DBProject.TOP_K_CUSTOMER_PRICE_SQL) {
+         Object[] params (Random r) {
+            Object[] c = pick (r, _customers);
+            return new Object[] { c[1], c[2], 10 };
+         }
+      });
+      ops.add (new Query ("totalCostForCustomer", DBProject.CUSTOMER_TOTAL_COST_SQL) {
+         Object[] params (Random r) {
+            Date from = day (r);
+            return new Object[] { from, new Date (from.getTime () + 365 * DAY), pick (r, _customers)[0] };
+         }
+      });
+      ops.add (new Query ("listRepairsMade", DBProject.REPAIRS_BY_COMPANY_SQL) {
+         Object[] params (Random r) {
+            return new Object[] { pick (r, _companies)[1] };
+         }
+      });
+      ops.add (new Query ("topKMaintenanceCompany", DBProject.TOP_K_MAINTENANCE_COMPANY_SQL) {
+         Object[] params (Random r) {
+            return new Object[] { 10 };
+         }
+      });
+      ops.add (new Query ("numberOfRepairsForEachRoomPerYear", DBProject.REPAIRS_PER_YEAR_SQL) {
+         Object[] params (Random r) {
+            int[] room = pick (r, _rooms);
+            return new Object[] { room[0], room[1] };
+         }
+      });
+      ops.add (new Query ("roomsOnDate", DBProject.ROOMS_ON_DATE_SQL) {
+         Object[] params (Random r) {
+            return new Object[] { day (r), pick (r, _rooms)[0] };
+         }
+      });
+      ops.add (new Operation ("bookStay", true) {
+         boolean run (Random r) throws SQLException {
+            int[] room = pick (r, _rooms);
+            int[] bIDs = new int[1 + r.nextInt (7)];
+            for (int i = 0; i < bIDs.length; ++i)
+               bIDs[i] = _esql.nextId (IdAllocator.BOOKING);
+            Date checkIn = new Date (_today + r.nextInt (365) * DAY);
+            return _esql.reserveStay (bIDs, (Integer) pick (r, _customers)[0], room[0], room[1], checkIn,
+               1 + r.nextInt (3), 100 + r.nextInt (1900)) == DBProject.BookingResult.BOOKED;
+         }
+      });
+      ops.add (new Query ("searchAvailableRooms", DBProject.SEARCH_AVAILABLE_ROOMS_SQL) {
+         Object[] params (Random r) {
+            int hotelID = pick (r, _rooms)[0];
+            Date checkIn = day (r);
+            return new Object[] { hotelID, -1, hotelID, "", "", checkIn,
+                                  new Date (checkIn.getTime () + (1 + r.nextInt (7)) * DAY), 10 };
+         }
+      });
+      return ops;
+   }//end operations
+
+   /*
+    * Reads random keys of every table the operations refer to.
+    */
+   private void sample () throws SQLException {
+      Connection conn = _esql.borrowConnection ();
+      boolean failed = true;
+      try {
+         String random = " ORDER BY random() LIMIT " + SAMPLES;
+         List<Object[]> rows = rows (conn, "SELECT hotelID, roomNo FROM Room WHERE hotelID <> 0" + random);
+         _rooms = new int[rows.size ()][];
+         for (int i = 0; i < _rooms.length; ++i)
+            _rooms[i] = new int[] { intValue (rows.get (i)[0]), intValue (rows.get (i)[1]) };
+         _customers = trimmed (rows (conn, "SELECT customerID, fName, lName FROM Customer WHERE customerID <> 0" + random));
+         _companies = trimmed (rows (conn, "SELECT cmpID, name FROM MaintenanceCompany WHERE cmpID <> 0" + random));
+         _managers = ints (rows (conn, "SELECT SSN FROM Staff WHERE role = 'Manager' AND SSN <> 0" + random));
+         _cleaners = ints (rows (conn, "SELECT SSN FROM Staff WHERE role = 'HouseCleaning'" + random));
+         _repairs = ints (rows (conn, "SELECT rID FROM Repair WHERE rID <> 0" + random));
+         _nextRoomNo.set (intValue (rows (conn, "SELECT COALESCE(MAX(roomNo), 0) FROM Room").get (0)[0]));
+         failed = false;
+      }finally {
+         _esql.releaseConnection (conn, failed);
+      }
+      if (_rooms.length == 0 || _customers.length == 0 || _companies.length == 0
+          || _managers.length == 0 || _cleaners.length == 0 || _repairs.length == 0)
+         throw new SQLException ("The workload needs rooms, customers, companies, managers, cleaners and repairs; "
+                                 + "load the data first");
+   }//end sample
+
+   private static List<Object[]> rows (Connection conn, String sql) throws SQLException {
+      Statement stmt = conn.createStatement ();
+      try {
+         ResultSet rs = stmt.executeQuery (sql);
+         int columns = rs.getMetaData ().getColumnCount ();
+         List<Object[]> rows = new ArrayList<Object[]> ();
+         while (rs.next ()) {
+            Object[] row = new Object[columns];
+            for (int i = 0; i < columns; ++i)
+               row[i] = rs.getObject (i + 1);
+            rows.add (row);
+         }
+         rs.close ();
+         return rows;
+      }finally {
+         stmt.close ();
+      }
+   }//end rows
+
+   /*
+    * Keys as Integer and names without the CHAR padding.
+    */
+   private static Object[][] trimmed (List<Object[]> rows) {
+      Object[][] result = rows.toArray (new Object[rows.size ()][]);
+      for (Object[] row : result) {
+         row[0] = intValue (row[0]);
+         for (int i = 1; i < row.length; ++i)
+            row[i] = String.valueOf (row[i]).trim ();
+      }
+      return result;
+   }//end trimmed
+
+   private static int[] ints (List<Object[]> rows) {
+      int[] result = new int[rows.size ()];
+      for (int i = 0; i < result.length; ++i)
+         result[i] = intValue (rows.get (i)[0]);
+      return result;
+   }//end ints
+
+   private static int intValue (Object o) {
+      return o == null ? 0 : ((Number) o).intValue ();
+   }//end intValue
+
+   private static <T> T pick (Random r, T[] items) {
+      return items[r.nextInt (items.length)];
+   }//end pick
+
+   /*
+    * A random day of the years the shipped data covers (2000 to 2018).
+    */
+   private Date day (Random r) {
+      return new Date (_firstDay + r.nextInt (19 * 365) * DAY);
+   }//end day
+
+}//end WorkloadDriver
@@ -0,0 +1,25 @@
+#!/bin/sh
+# Runs the JMH benchmarks in bench/ against the classes in this directory.
+# JMH needs a JDK 8 or later.  Put jmh-core, jmh-generator-annprocess,
+# jopt-simple and commons-math3 jars in bench/lib or point JMH_LIB at them.
+#
+#   ./bench.sh                     all benchmarks
+#   ./bench.sh RenderBenchmark     benchmarks whose name matches
+#
+# Results go to bench/results-<time>.json, with allocation rates from the GC
+# profiler (gc.alloc.rate.norm is bytes per operation), for comparing runs.
+JMH_LIB=${JMH_LIB:-$PWD/bench/lib}
+CP=$PWD/pg73jdbc3.jar
+for jar in "$JMH_LIB"/*.jar; do
+   CP=$CP:$jar
+done
+
+# JMH does not accept benchmarks in the default package, so the program
+# sources are compiled into package dbproject next to the benchmarks
+rm -rf bench/classes bench/src && mkdir -p bench/classes bench/src
+for f in *.java; do
+   (echo "package dbproject;"; cat "$f") > bench/src/"$f"
+done
+javac -nowarn -cp "$CP" -d bench/classes bench/src/*.java bench/*.java || exit 1
+java -cp "bench/classes:$CP" org.openjdk.jmh.Main -prof gc \
+   -rf json -rff bench/results-`date +%Y%m%d-%H%M%S`.json "$@"
@@ -0,0 +1,44 @@
+package dbproject;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of the dates typed at the menu prompts.  DBProject.parseDate builds
+ * a SimpleDateFormat per call; the reused format is the lower bound for
+ * comparison.
+ */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (value = 2, jvmArgsAppend = { "-Xms512m", "-Xmx512m" })
+@State (Scope.Thread)
+public class DateParseBenchmark {
+
+   private final String _text = "05/12/2015";
+   private final SimpleDateFormat _reused = new SimpleDateFormat ("MM/dd/yyyy");
+
+   @Benchmark
+   public Date parseDate () throws ParseException {
+      return DBProject.parseDate (_text);
+   }
+
+   @Benchmark
+   public Date reusedFormat () throws ParseException {
+      return _reused.parse (_text);
+   }
+
+}//end DateParseBenchmark
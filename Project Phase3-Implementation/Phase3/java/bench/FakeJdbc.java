@@ -0,0 +1,114 @@
+package dbproject;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+/**
+ * In-memory stand-ins for the JDBC objects the client code talks to, so the
+ * benchmarks measure the client side only.  They are dynamic proxies: the
+ * dispatch cost is part of every measurement but the same from run to run.
+ */
+final class FakeJdbc {
+
+   private FakeJdbc () {
+   }
+
+   /**
+    * A connection whose prepared statements remember the last bound values
+    * and execute to nothing.
+    */
+   static Connection connection () {
+      return proxy (Connection.class, new InvocationHandler () {
+         public Object invoke (Object self, Method m, Object[] args) {
+            if (m.getName ().equals ("prepareStatement"))
+               return preparedStatement ();
+            return defaultValue (m.getReturnType ());
+         }
+      });
+   }//end connection
+
+   static PreparedStatement preparedStatement () {
+      final Object[] bound = new Object[16];
+      return proxy (PreparedStatement.class, new InvocationHandler () {
+         public Object invoke (Object self, Method m, Object[] args) {
+            String name = m.getName ();
+            if (name.startsWith ("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+               bound[(Integer) args[0]] = args[1];
+               return null;
+            }
+            if (name.equals ("clearParameters")) {
+               java.util.Arrays.fill (bound, null);
+               return null;
+            }
+            return defaultValue (m.getReturnType ());
+         }
+      });
+   }//end preparedStatement
+
+   /**
+    * A forward-only result set over the given rows, all columns text.
+    */
+   static ResultSet resultSet (final String[] columns, final String[][] rows) {
+      final ResultSetMetaData meta = proxy (ResultSetMetaData.class, new InvocationHandler () {
+         public Object invoke (Object self, Method m, Object[] args) {
+            String name = m.getName ();
+            if (name.equals ("getColumnCount"))
+               return columns.length;
+            if (name.equals ("getColumnName") || name.equals ("getColumnLabel"))
+               return columns[(Integer) args[0] - 1];
+            return defaultValue (m.getReturnType ());
+         }
+      });
+      return proxy (ResultSet.class, new InvocationHandler () {
+         private int _row = -1;
+
+         public Object invoke (Object self, Method m, Object[] args) {
+            String name = m.getName ();
+            if (name.equals ("next"))
+               return ++_row < rows.length;
+            if (name.equals ("getString"))
+               return rows[_row][(Integer) args[0] - 1];
+            if (name.equals ("getMetaData"))
+               return meta;
+            return defaultValue (m.getReturnType ());
+         }
+      });
+   }//end resultSet
+
+   /**
+    * Booking-like rows (bID, customer, hotelID, roomNo, bookingDate,
+    * noOfPeople, price).
+    */
+   static String[][] bookingRows (int count) {
+      String[][] rows = new String[count][];
+      for (int i = 0; i < count; ++i)
+         rows[i] = new String[] { String.valueOf (i + 1), String.valueOf (i % 2000 + 1), String.valueOf (i % 1000 + 1),
+                                  String.valueOf (i % 10 + 1), "2015-05-" + (10 + i % 20), String.valueOf (i % 3 + 1),
+                                  String.valueOf (500 + i % 1500) };
+      return rows;
+   }//end bookingRows
+
+   static final String[] BOOKING_COLUMNS =
+      { "bid", "customer", "hotelid", "roomno", "bookingdate", "noofpeople", "price" };
+
+   @SuppressWarnings ("unchecked")
+   private static <T> T proxy (Class<T> type, InvocationHandler handler) {
+      return (T) Proxy.newProxyInstance (FakeJdbc.class.getClassLoader (), new Class<?>[] { type }, handler);
+   }
+
+   private static Object defaultValue (Class<?> type) {
+      if (type == boolean.class)
+         return Boolean.FALSE;
+      if (type == int.class)
+         return 0;
+      if (type == long.class)
+         return 0L;
+      return null;
+   }
+
+}//end FakeJdbc
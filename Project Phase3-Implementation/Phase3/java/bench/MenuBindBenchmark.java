@@ -0,0 +1,63 @@
+package dbproject;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The client side of issuing one menu operation: the statement cache lookup
+ * and the parameter binding DBProject.executeQuery and executeUpdate do
+ * before the round trip, per operation.
+ */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (value = 2, jvmArgsAppend = { "-Xms512m", "-Xmx512m" })
+@State (Scope.Thread)
+public class MenuBindBenchmark {
+
+   @Param ({ "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "17", "18" })
+   public int operation;
+
+   private MenuQuery _query;
+   private StatementCache _cache;
+   private PreparedStatement _statement;
+
+   @Setup
+   public void setUp () throws SQLException {
+      List<MenuQuery> queries = MenuQuery.build (1, 1, 1, "rzqs", "eyeg", 1, "iqcq", 1, 3, 1, new Date (1431388800000L));
+      _query = queries.get (operation - 1);
+      Connection conn = FakeJdbc.connection ();
+      _cache = new StatementCache (conn, 32, 5);
+      _cache.prepare (_query.sql, _query.params);
+      _statement = FakeJdbc.preparedStatement ();
+   }
+
+   @Benchmark
+   public PreparedStatement cachedPrepare () throws SQLException {
+      return _cache.prepare (_query.sql, _query.params);
+   }
+
+   @Benchmark
+   public PreparedStatement bind () throws SQLException {
+      StatementCache.bind (_statement, _query.params);
+      return _statement;
+   }
+
+}//end MenuBindBenchmark
@@ -0,0 +1,73 @@
+package dbproject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rendering of a query result the way DBProject.executeQuery prints it: the
+ * rows of an in-memory result set through a ResultSink into a buffered
+ * writer that drops the characters.
+ */
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (value = 2, jvmArgsAppend = { "-Xms512m", "-Xmx512m" })
+@State (Scope.Thread)
+public class RenderBenchmark {
+
+   @Param ({ "tsv", "table", "csv", "json" })
+   public String format;
+
+   @Param ({ "1", "1000" })
+   public int rows;
+
+   private String[][] _rows;
+   private Writer _out;
+
+   @Setup
+   public void setUp (final Blackhole bh) {
+      _rows = FakeJdbc.bookingRows (rows);
+      // buffered like DBProject.out, the full buffer goes to the blackhole
+      _out = new BufferedWriter (new Writer () {
+         public void write (char[] buf, int off, int len) {
+            bh.consume (buf);
+         }
+         public void flush () {
+         }
+         public void close () {
+         }
+      }, 1 << 16);
+   }
+
+   @Benchmark
+   public int render () throws SQLException, IOException {
+      ResultSet rs = FakeJdbc.resultSet (FakeJdbc.BOOKING_COLUMNS, _rows);
+      ResultSink sink = ResultSink.create (format, _out);
+      int count = 0;
+      while (rs.next ()) {
+         sink.row (rs);
+         ++count;
+      }
+      sink.end ();
+      return count;
+   }
+
+}//end RenderBenchmark
@@ -0,0 +1,43 @@
+#!/bin/bash
+# Sends one operation to a running "java DBProject <dbname> <port> <user> serve"
+# and prints the result rows, e.g.
+#
+#   ./dbclient.sh numberOfAvailableRooms 5
+#   ./dbclient.sh bookRoom 5 101 42 10/18/2026 2 120
+#   ./dbclient.sh help
+#
+# The inputs are those of the menu prompts, in the same order.  The server
+# port is DBPROJECT_PORT (default 5166).  Exits 1 with the message on
+# standard error when the operation fails, 3 when the server is too busy to
+# run it (try again later).  Scripts with many operations can
+# keep one connection open and send a line per operation instead.
+exec 3<>/dev/tcp/127.0.0.1/${DBPROJECT_PORT:-5166} || exit 2
+
+# one request line, the fields tab separated with \, tab and newline escaped
+line=
+for arg in "$@"; do
+   arg=${arg//\\/\\\\}
+   arg=${arg//$'\t'/\\t}
+   arg=${arg//$'\n'/\\n}
+   line=${line:+$line$'\t'}$arg
+done
+printf '%s\nquit\n' "$line" >&3
+
+IFS= read -r status <&3
+case $status in
+OK\ *)
+   n=${status#OK }
+   while [ "$n" -gt 0 ] && IFS= read -r row <&3; do
+      printf '%s\n' "$row"
+      n=$((n - 1))
+   done
+   ;;
+BUSY\ *)
+   echo "${status#BUSY }" >&2
+   exit 3
+   ;;
+*)
+   echo "${status#ERR }" >&2
+   exit 1
+   ;;
+esac
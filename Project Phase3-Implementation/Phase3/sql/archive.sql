@@ -0,0 +1,101 @@
+-- Archive of old bookings and repairs.  archive_history(before) moves the
+-- bookings, repairs and repair requests dated before the given day out of
+-- the tables the menu works on:
+--  * whole months of Booking, detached from Booking and attached to
+--    BookingArchive, which is partitioned the same way, so no row is copied
+--  * repairs and their requests, moved row by row to RepairArchive and
+--    RequestArchive (the sentinel repair 0 stays)
+-- The reports read BookingHistory, Booking and BookingArchive together;
+-- for date ranges partition pruning skips the archive unless the range
+-- reaches back into archived months.  Report 14 reads RepairHistory, as
+-- the repair counts of sql/rollups.sql (15. and 16.) keep counting
+-- archived repairs.
+-- create.sql runs this file after the tables are created; it only defines
+-- tables and functions.
+DROP VIEW IF EXISTS BookingHistory;
+DROP VIEW IF EXISTS RepairHistory;
+DROP TABLE IF EXISTS BookingArchive;
+DROP TABLE IF EXISTS RepairArchive;
+DROP TABLE IF EXISTS RequestArchive;
+DROP FUNCTION IF EXISTS archive_history(Date) CASCADE;
+DROP FUNCTION IF EXISTS clear_archive() CASCADE;
+
+CREATE TABLE BookingArchive (LIKE Booking INCLUDING DEFAULTS)
+PARTITION BY RANGE (bookingDate);
+
+-- every booking, hot and archived; a bookingDate range prunes both sides
+-- to the months it covers
+CREATE VIEW BookingHistory AS
+SELECT * FROM Booking
+UNION ALL
+SELECT * FROM BookingArchive;
+
+CREATE TABLE RepairArchive (LIKE Repair INCLUDING DEFAULTS,
+							PRIMARY KEY(rID));
+
+-- 14. repairs of a company, hot and archived
+CREATE INDEX repairArchiveCompanyIndex
+ON RepairArchive (mCompany);
+
+CREATE VIEW RepairHistory AS
+SELECT * FROM Repair
+UNION ALL
+SELECT * FROM RepairArchive;
+
+CREATE TABLE RequestArchive (LIKE Request INCLUDING DEFAULTS,
+							 PRIMARY KEY(reqID));
+
+-- Moves the history dated before the given day, a month at a time for
+-- bookings, in one transaction.  Returns what it moved.
+CREATE FUNCTION archive_history(before Date)
+RETURNS TABLE(months int, bookings bigint, repairs bigint, requests bigint) AS $$
+DECLARE
+	partition text;
+	month Date;
+	moved bigint;
+BEGIN
+	months := 0;
+	bookings := 0;
+	FOR partition IN SELECT * FROM detach_booking_partitions(before) LOOP
+		month := to_date(substr(partition, 10), 'YYYYMM');
+		EXECUTE format('ALTER TABLE BookingArchive ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+					   partition, month, CAST(month + interval '1 month' AS Date));
+		EXECUTE format('SELECT COUNT(*) FROM %I', partition) INTO moved;
+		months := months + 1;
+		bookings := bookings + moved;
+	END LOOP;
+	-- archived nights are no longer looked up for availability
+	DELETE FROM RoomNightInventory WHERE night < date_trunc('month', before);
+
+	-- the repair counts include archived repairs, so the rollup trigger
+	-- skips the deletes below
+	PERFORM set_config('dbproject.archiving', 'on', true);
+	WITH old AS (SELECT rID FROM Repair WHERE repairDate < before AND rID <> 0),
+		 moved AS (DELETE FROM Request q USING old WHERE q.repairID = old.rID RETURNING q.*)
+	INSERT INTO RequestArchive SELECT * FROM moved;
+	GET DIAGNOSTICS requests = ROW_COUNT;
+	WITH moved AS (DELETE FROM Repair WHERE repairDate < before AND rID <> 0 RETURNING *)
+	INSERT INTO RepairArchive SELECT * FROM moved;
+	GET DIAGNOSTICS repairs = ROW_COUNT;
+	PERFORM set_config('dbproject.archiving', 'off', true);
+	RETURN NEXT;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Empties the archive, before the load mode replaces all data.  The
+-- archived Booking months are dropped, so their partitions can be created
+-- in Booking again.
+CREATE FUNCTION clear_archive()
+RETURNS void AS $$
+DECLARE
+	partition text;
+BEGIN
+	FOR partition IN
+		SELECT c.relname FROM pg_inherits i, pg_class c
+		WHERE i.inhparent = CAST('bookingarchive' AS regclass) AND c.oid = i.inhrelid
+	LOOP
+		EXECUTE format('DROP TABLE %I', partition);
+	END LOOP;
+	TRUNCATE RepairArchive, RequestArchive;
+END;
+$$ LANGUAGE plpgsql;
@@ -10,6 +10,14 @@ DROP TABLE IF EXISTS Repair CASCADE;
 DROP TABLE IF EXISTS Request CASCADE;
 DROP TABLE IF EXISTS Assigned CASCADE;
 
+-- The below sql statements drops of the key sequences if they exist
+DROP SEQUENCE IF EXISTS customer_id_seq;
+DROP SEQUENCE IF EXISTS company_id_seq;
+DROP SEQUENCE IF EXISTS repair_id_seq;
+DROP SEQUENCE IF EXISTS booking_id_seq;
+DROP SEQUENCE IF EXISTS assigned_id_seq;
+DROP SEQUENCE IF EXISTS request_id_seq;
+
 -- The below sql statements drops of the enum types if they exits
 DROP TYPE IF EXISTS StaffRole CASCADE;
 DROP TYPE IF EXISTS GenderType CASCADE;
@@ -57,7 +65,8 @@ CREATE TABLE Booking( bID Numeric NOT NULL,
 					  bookingDate Date NOT NULL,
 					  noOfPeople Numeric,
 					  price Numeric(6,2) NOT NULL,
-					  PRIMARY KEY(bID));
+					  PRIMARY KEY(bID, bookingDate))
+PARTITION BY RANGE (bookingDate);
 					  
 CREATE TABLE Repair( rID Numeric NOT NULL,
 					 hotelID Numeric NOT NULL DEFAULT 0,
@@ -81,73 +90,22 @@ CREATE TABLE Assigned( asgID Numeric NOT NULL,
 					   roomNo Numeric NOT NULL DEFAULT 0,
 					   PRIMARY KEY(asgID));
 
--- The below sql statments creates necessary Foreign Key Constraints on the above created tables
-ALTER TABLE Hotel
-ADD CONSTRAINT managerConstraint
-FOREIGN KEY(manager)
-REFERENCES Staff(SSN)
-ON DELETE SET DEFAULT;
- 					
-ALTER TABLE Staff
-ADD CONSTRAINT employerConstraint
-FOREIGN KEY(employerID)
-REFERENCES Hotel(hotelID)
-ON DELETE CASCADE;
+-- monthly partitions of Booking
+\ir partitions.sql
 
-					   
-ALTER TABLE Room
-ADD CONSTRAINT weakEntityConstraint
-FOREIGN KEY(hotelID)
-REFERENCES Hotel(hotelID)
-ON DELETE CASCADE;
+-- archive of old bookings and repairs
+\ir archive.sql
 
-ALTER TABLE Booking
-ADD CONSTRAINT bookingCustomerConstraint
-FOREIGN KEY(customer)
-REFERENCES Customer(customerID)
-ON DELETE SET DEFAULT;
-
-ALTER TABLE Booking
-ADD CONSTRAINT bookingRoomConstraint
-FOREIGN KEY(hotelID, roomNo)
-REFERENCES Room(hotelID, roomNo)
-ON DELETE SET DEFAULT;	
+-- The below sql statements create the key sequences used by DBProject.
+-- Every nextval reserves a block of 50 keys for one client
+-- (IdAllocator.BLOCK_SIZE), so clients hand out keys without a round trip
+CREATE SEQUENCE customer_id_seq INCREMENT BY 50;
+CREATE SEQUENCE company_id_seq INCREMENT BY 50;
+CREATE SEQUENCE repair_id_seq INCREMENT BY 50;
+CREATE SEQUENCE booking_id_seq INCREMENT BY 50;
+CREATE SEQUENCE assigned_id_seq INCREMENT BY 50;
+CREATE SEQUENCE request_id_seq INCREMENT BY 50;
 
-ALTER TABLE Repair
-ADD CONSTRAINT repairMcmpConstraint
-FOREIGN KEY(mCompany)
-REFERENCES MaintenanceCompany(cmpID)
-ON DELETE SET DEFAULT;
-
-ALTER TABLE Repair
-ADD CONSTRAINT repairRoomConstraint
-FOREIGN KEY(hotelID, roomNo)
-REFERENCES Room(hotelID, roomNo)
-ON DELETE SET DEFAULT;   
-
-ALTER TABLE Request
-ADD CONSTRAINT requestMngrConstraint
-FOREIGN KEY(managerID)
-REFERENCES Staff(SSN)
-ON DELETE SET DEFAULT;
-
-ALTER TABLE Request
-ADD CONSTRAINT requestRepairConstraint
-FOREIGN KEY(repairID)
-REFERENCES Repair(rID)
-ON DELETE SET DEFAULT;
-
-ALTER TABLE Assigned
-ADD CONSTRAINT assgndStaffConstraint
-FOREIGN KEY(staffID)
-REFERENCES Staff(SSN)
-ON DELETE SET DEFAULT;
-
-ALTER TABLE Assigned
-ADD CONSTRAINT assgndRoomConstraint
-FOREIGN KEY(hotelID, roomNo)
-REFERENCES Room(hotelID, roomNo)
-ON DELETE SET DEFAULT; 
 -- data copy				 
 COPY Hotel(	hotelID,			 
 			address,	   
@@ -194,16 +152,28 @@ COPY MaintenanceCompany(cmpID,
 FROM 'maintenanceCompany.csv'
 WITH DELIMITER ',';	
 
-COPY Booking( bID,
-			  customer,
-			  hotelID,
-			  roomNo,
-			  bookingDate,
-			  noOfPeople,
-			  price)
+-- bookings go through a plain table first, so the partitions of their
+-- months can be created before they are inserted
+CREATE TEMP TABLE BookingLoad (LIKE Booking);
+
+COPY BookingLoad( bID,
+				  customer,
+				  hotelID,
+				  roomNo,
+				  bookingDate,
+				  noOfPeople,
+				  price)
 FROM 'booking.csv'
 WITH DELIMITER ',';	
 
+SELECT ensure_booking_partitions(month, month)
+FROM (SELECT DISTINCT CAST(date_trunc('month', bookingDate) AS Date) AS month FROM BookingLoad) months;
+-- and the coming year, later months are created on first booking
+SELECT ensure_booking_partitions(CURRENT_DATE, CAST(CURRENT_DATE + interval '1 year' AS Date));
+
+INSERT INTO Booking SELECT * FROM BookingLoad;
+DROP TABLE BookingLoad;
+
 COPY Repair( rID,
 			 hotelID,
 			 roomNo,
@@ -227,5 +197,97 @@ COPY Assigned(asgID,
 			  hotelID,
 			  roomNo)
 FROM 'assigned.csv'
-WITH DELIMITER ',';		
-	
\ No newline at end of file
+WITH DELIMITER ',';
+
+-- move the key sequences past the loaded keys
+SELECT setval('customer_id_seq', CAST(COALESCE(MAX(customerID), 0) + 1 AS bigint), false) FROM Customer;
+SELECT setval('company_id_seq', CAST(COALESCE(MAX(cmpID), 0) + 1 AS bigint), false) FROM MaintenanceCompany;
+SELECT setval('repair_id_seq', CAST(COALESCE(MAX(rID), 0) + 1 AS bigint), false) FROM Repair;
+SELECT setval('booking_id_seq', CAST(COALESCE(MAX(bID), 0) + 1 AS bigint), false) FROM Booking;
+SELECT setval('assigned_id_seq', CAST(COALESCE(MAX(asgID), 0) + 1 AS bigint), false) FROM Assigned;
+SELECT setval('request_id_seq', CAST(COALESCE(MAX(reqID), 0) + 1 AS bigint), false) FROM Request;
+
+-- The below sql statments creates necessary Foreign Key Constraints on the above created tables
+-- They are added after the data copy so the loaded rows are checked once per
+-- constraint instead of one row at a time
+ALTER TABLE Hotel
+ADD CONSTRAINT managerConstraint
+FOREIGN KEY(manager)
+REFERENCES Staff(SSN)
+ON DELETE SET DEFAULT;
+ 					
+ALTER TABLE Staff
+ADD CONSTRAINT employerConstraint
+FOREIGN KEY(employerID)
+REFERENCES Hotel(hotelID)
+ON DELETE CASCADE;
+
+					   
+ALTER TABLE Room
+ADD CONSTRAINT weakEntityConstraint
+FOREIGN KEY(hotelID)
+REFERENCES Hotel(hotelID)
+ON DELETE CASCADE;
+
+-- a room can be booked only once per night; bookings rely on this to reject
+-- a double booking in the same statement that inserts it
+ALTER TABLE Booking
+ADD CONSTRAINT bookingRoomNightUnique
+UNIQUE(hotelID, roomNo, bookingDate);
+
+ALTER TABLE Booking
+ADD CONSTRAINT bookingCustomerConstraint
+FOREIGN KEY(customer)
+REFERENCES Customer(customerID)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Booking
+ADD CONSTRAINT bookingRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT;	
+
+ALTER TABLE Repair
+ADD CONSTRAINT repairMcmpConstraint
+FOREIGN KEY(mCompany)
+REFERENCES MaintenanceCompany(cmpID)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Repair
+ADD CONSTRAINT repairRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT;   
+
+ALTER TABLE Request
+ADD CONSTRAINT requestMngrConstraint
+FOREIGN KEY(managerID)
+REFERENCES Staff(SSN)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Request
+ADD CONSTRAINT requestRepairConstraint
+FOREIGN KEY(repairID)
+REFERENCES Repair(rID)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Assigned
+ADD CONSTRAINT assgndStaffConstraint
+FOREIGN KEY(staffID)
+REFERENCES Staff(SSN)
+ON DELETE SET DEFAULT;
+
+ALTER TABLE Assigned
+ADD CONSTRAINT assgndRoomConstraint
+FOREIGN KEY(hotelID, roomNo)
+REFERENCES Room(hotelID, roomNo)
+ON DELETE SET DEFAULT; 
+
+-- indexes for the menu queries
+\ir indexes.sql
+
+-- repair counts for the maintenance reports
+\ir rollups.sql
+
+-- booked rooms per hotel and night
+\ir inventory.sql
@@ -0,0 +1,24 @@
+-- Indexes for the access paths of the DBProject menu queries.
+-- create.sql runs this file after the constraints; it can also be run on its
+-- own. Booking(hotelID, roomNo, bookingDate) needs no index here, the
+-- bookingRoomNightUnique constraint in create.sql already creates one.
+DROP INDEX IF EXISTS bookingDatePriceIndex;
+DROP INDEX IF EXISTS bookingCustomerIndex;
+DROP INDEX IF EXISTS customerNameIndex;
+DROP INDEX IF EXISTS repairCompanyIndex;
+
+-- 11. top k rooms by price for a date range
+CREATE INDEX bookingDatePriceIndex
+ON Booking (bookingDate, price);
+
+-- 12. top k bookings of a customer, 13. customer total cost for a date range
+CREATE INDEX bookingCustomerIndex
+ON Booking (customer, bookingDate);
+
+-- 12. customer looked up by name
+CREATE INDEX customerNameIndex
+ON Customer (fName, lName);
+
+-- 14. repairs made by a maintenance company, and the repair rollup trigger
+CREATE INDEX repairCompanyIndex
+ON Repair (mCompany);
@@ -0,0 +1,114 @@
+-- Room-night inventory kept up to date by triggers on Room and Booking, so
+-- the number of available and booked rooms of a hotel on a date (17.) is
+-- a key lookup and one short index range instead of a scan of the hotel's
+-- bookings.  A booking is one room for one night.
+--
+-- The booked nights are one row per room night, not a counter per hotel and
+-- night: concurrent bookings of one hotel for one night would all update the
+-- same counter row and wait on its lock until commit.  A room night row is
+-- only ever inserted by the booking of that room night, which Booking's own
+-- unique key already serializes.  RoomsPerHotel is a counter, as rooms are
+-- added rarely.
+-- Only current bookings have rows: archive_history (sql/archive.sql) moves
+-- booking months without firing the Booking triggers and deletes the rows
+-- of the archived nights itself.
+-- create.sql runs this file after the data copy; it can also be run on its
+-- own, it rebuilds the counts from Room and Booking.
+DROP TABLE IF EXISTS RoomsPerHotel;
+DROP TABLE IF EXISTS RoomNightInventory;
+DROP FUNCTION IF EXISTS refresh_room_inventory() CASCADE;
+DROP FUNCTION IF EXISTS add_hotel_rooms(Numeric, int) CASCADE;
+DROP FUNCTION IF EXISTS add_booked_night(Numeric, Date, int) CASCADE;
+DROP FUNCTION IF EXISTS add_booked_night(Numeric, Date, Numeric, int) CASCADE;
+DROP FUNCTION IF EXISTS room_count_trigger() CASCADE;
+DROP FUNCTION IF EXISTS room_inventory_trigger() CASCADE;
+
+CREATE TABLE RoomsPerHotel( hotelID Numeric NOT NULL,
+							rooms bigint NOT NULL,
+							PRIMARY KEY(hotelID));
+
+-- rooms free on a night are RoomsPerHotel.rooms - the rows of the night, so
+-- adding a room does not touch every night of its hotel
+CREATE TABLE RoomNightInventory( hotelID Numeric NOT NULL,
+								 night Date NOT NULL,
+								 roomNo Numeric NOT NULL,
+								 PRIMARY KEY(hotelID, night, roomNo));
+
+-- Adds delta to the room count of a hotel, UPDATE-then-INSERT as in
+-- add_repair_count.
+CREATE FUNCTION add_hotel_rooms(hotel Numeric, delta int)
+RETURNS void AS $$
+BEGIN
+	LOOP
+		UPDATE RoomsPerHotel SET rooms = rooms + delta WHERE hotelID = hotel;
+		EXIT WHEN FOUND;
+		BEGIN
+			INSERT INTO RoomsPerHotel(hotelID, rooms) VALUES (hotel, delta);
+			EXIT;
+		EXCEPTION WHEN unique_violation THEN
+			-- inserted by another session, update it
+		END;
+	END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Marks one room night booked (delta 1) or free again (delta -1).
+CREATE FUNCTION add_booked_night(hotel Numeric, bookedNight Date, room Numeric, delta int)
+RETURNS void AS $$
+BEGIN
+	IF delta > 0 THEN
+		INSERT INTO RoomNightInventory(hotelID, night, roomNo) VALUES (hotel, bookedNight, room);
+	ELSE
+		DELETE FROM RoomNightInventory WHERE hotelID = hotel AND night = bookedNight AND roomNo = room;
+	END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION room_count_trigger()
+RETURNS trigger AS $$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		PERFORM add_hotel_rooms(OLD.hotelID, -1);
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		PERFORM add_hotel_rooms(NEW.hotelID, 1);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roomCountTrigger
+AFTER INSERT OR UPDATE OF hotelID OR DELETE ON Room
+FOR EACH ROW EXECUTE PROCEDURE room_count_trigger();
+
+CREATE FUNCTION room_inventory_trigger()
+RETURNS trigger AS $$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		PERFORM add_booked_night(OLD.hotelID, OLD.bookingDate, OLD.roomNo, -1);
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		PERFORM add_booked_night(NEW.hotelID, NEW.bookingDate, NEW.roomNo, 1);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roomInventoryTrigger
+AFTER INSERT OR UPDATE OF hotelID, roomNo, bookingDate OR DELETE ON Booking
+FOR EACH ROW EXECUTE PROCEDURE room_inventory_trigger();
+
+-- Rebuilds the counts from Room and Booking in one pass, after a bulk load
+-- that ran with the triggers disabled.
+CREATE FUNCTION refresh_room_inventory()
+RETURNS void AS $$
+BEGIN
+	TRUNCATE RoomsPerHotel, RoomNightInventory;
+	INSERT INTO RoomsPerHotel(hotelID, rooms)
+	SELECT hotelID, COUNT(*) FROM Room GROUP BY hotelID;
+	INSERT INTO RoomNightInventory(hotelID, night, roomNo)
+	SELECT hotelID, bookingDate, roomNo FROM Booking;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT refresh_room_inventory();
@@ -0,0 +1,72 @@
+-- Monthly range partitions of Booking on bookingDate.  Booking is created
+-- PARTITION BY RANGE (bookingDate) in create.sql, with one partition per
+-- month named booking_pYYYYMM.  Queries with a bookingDate range only scan
+-- the months in the range, and a month of old bookings is removed by
+-- detaching its partition instead of deleting its rows.
+-- create.sql runs this file before the data copy; it only defines functions.
+DROP FUNCTION IF EXISTS ensure_booking_partitions(Date, Date) CASCADE;
+DROP FUNCTION IF EXISTS detach_booking_partitions(Date) CASCADE;
+DROP FUNCTION IF EXISTS is_booking_partition(text) CASCADE;
+
+CREATE FUNCTION is_booking_partition(partition text)
+RETURNS boolean AS $$
+	SELECT EXISTS (SELECT 1 FROM pg_inherits i, pg_class c
+				   WHERE i.inhparent = CAST('booking' AS regclass) AND c.oid = i.inhrelid
+					 AND c.relname = partition);
+$$ LANGUAGE sql STABLE;
+
+-- Creates the missing partitions of the months from fromDate to toDate and
+-- returns how many it created.  DBProject calls it when a booking falls in
+-- a month that has no partition yet; a partition created by another session
+-- at the same time is skipped.  A month whose partition was detached or
+-- archived (sql/archive.sql) is an error rather than a second partition.
+CREATE FUNCTION ensure_booking_partitions(fromDate Date, toDate Date)
+RETURNS int AS $$
+DECLARE
+	month Date := CAST(date_trunc('month', fromDate) AS Date);
+	nextMonth Date;
+	partition text;
+	created int := 0;
+BEGIN
+	WHILE month <= toDate LOOP
+		nextMonth := CAST(month + interval '1 month' AS Date);
+		partition := 'booking_p' || to_char(month, 'YYYYMM');
+		IF NOT is_booking_partition(partition) THEN
+			BEGIN
+				EXECUTE format('CREATE TABLE %I PARTITION OF Booking FOR VALUES FROM (%L) TO (%L)',
+							   partition, month, nextMonth);
+				created := created + 1;
+			EXCEPTION WHEN duplicate_table OR unique_violation THEN
+				-- fine if another session created it, not if the month was
+				-- detached or archived
+				IF NOT is_booking_partition(partition) THEN
+					RAISE EXCEPTION 'Cannot create Booking partition %, a table of that name exists (a detached or archived month)', partition;
+				END IF;
+			END;
+		END IF;
+		month := nextMonth;
+	END LOOP;
+	RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Detaches the partitions of the months before the given date and returns
+-- their names.  The detached tables keep their rows and can be dumped,
+-- dropped or attached again.
+CREATE FUNCTION detach_booking_partitions(before Date)
+RETURNS SETOF text AS $$
+DECLARE
+	partition text;
+BEGIN
+	FOR partition IN
+		SELECT c.relname FROM pg_inherits i, pg_class c
+		WHERE i.inhparent = CAST('booking' AS regclass) AND c.oid = i.inhrelid
+		  AND c.relname ~ '^booking_p[0-9]{6}$'
+		  AND to_date(substr(c.relname, 10), 'YYYYMM') < date_trunc('month', before)
+		ORDER BY c.relname
+	LOOP
+		EXECUTE format('ALTER TABLE Booking DETACH PARTITION %I', partition);
+		RETURN NEXT partition;
+	END LOOP;
+END;
+$$ LANGUAGE plpgsql;
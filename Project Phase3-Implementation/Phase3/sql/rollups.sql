@@ -0,0 +1,97 @@
+-- Repair counts kept up to date by a trigger on Repair, so the maintenance
+-- reports (15. top k companies by repairs, 16. repairs per year of a room)
+-- read a few rows instead of grouping every repair.
+-- create.sql runs this file after the data copy; it can also be run on its
+-- own, it rebuilds the counts from Repair.
+DROP TABLE IF EXISTS RepairsPerCompany;
+DROP TABLE IF EXISTS RepairsPerRoomYear;
+DROP FUNCTION IF EXISTS refresh_repair_rollups() CASCADE;
+DROP FUNCTION IF EXISTS add_repair_count(Numeric, Numeric, Numeric, int, int) CASCADE;
+DROP FUNCTION IF EXISTS repair_rollup_trigger() CASCADE;
+
+CREATE TABLE RepairsPerCompany( cmpID Numeric NOT NULL,
+								repairs bigint NOT NULL,
+								PRIMARY KEY(cmpID));
+
+CREATE TABLE RepairsPerRoomYear( hotelID Numeric NOT NULL,
+								 roomNo Numeric NOT NULL,
+								 year int NOT NULL,
+								 repairs bigint NOT NULL,
+								 PRIMARY KEY(hotelID, roomNo, year));
+
+-- 15. top k companies walks this index from the top
+CREATE INDEX repairsPerCompanyCountIndex
+ON RepairsPerCompany (repairs);
+
+-- Adds delta to the counts of one repair.  The UPDATE-then-INSERT loop is
+-- safe when two sessions add the first repair of a company or room year at
+-- the same time: the loser of the INSERT retries the UPDATE.
+CREATE FUNCTION add_repair_count(company Numeric, hotel Numeric, room Numeric, repairYear int, delta int)
+RETURNS void AS $$
+BEGIN
+	LOOP
+		UPDATE RepairsPerCompany SET repairs = repairs + delta WHERE cmpID = company;
+		EXIT WHEN FOUND;
+		BEGIN
+			INSERT INTO RepairsPerCompany(cmpID, repairs) VALUES (company, delta);
+			EXIT;
+		EXCEPTION WHEN unique_violation THEN
+			-- inserted by another session, update it
+		END;
+	END LOOP;
+	LOOP
+		UPDATE RepairsPerRoomYear SET repairs = repairs + delta
+		WHERE hotelID = hotel AND roomNo = room AND year = repairYear;
+		EXIT WHEN FOUND;
+		BEGIN
+			INSERT INTO RepairsPerRoomYear(hotelID, roomNo, year, repairs) VALUES (hotel, room, repairYear, delta);
+			EXIT;
+		EXCEPTION WHEN unique_violation THEN
+			-- inserted by another session, update it
+		END;
+	END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION repair_rollup_trigger()
+RETURNS trigger AS $$
+BEGIN
+	-- repairs moved to RepairArchive stay counted (sql/archive.sql)
+	IF current_setting('dbproject.archiving', true) = 'on' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		PERFORM add_repair_count(OLD.mCompany, OLD.hotelID, OLD.roomNo,
+								 CAST(EXTRACT(year FROM OLD.repairDate) AS int), -1);
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		PERFORM add_repair_count(NEW.mCompany, NEW.hotelID, NEW.roomNo,
+								 CAST(EXTRACT(year FROM NEW.repairDate) AS int), 1);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER repairRollupTrigger
+AFTER INSERT OR UPDATE OF mCompany, hotelID, roomNo, repairDate OR DELETE ON Repair
+FOR EACH ROW EXECUTE PROCEDURE repair_rollup_trigger();
+
+-- Rebuilds the counts from Repair and RepairArchive in one pass, after a
+-- bulk load that ran with the trigger disabled.
+CREATE FUNCTION refresh_repair_rollups()
+RETURNS void AS $$
+BEGIN
+	TRUNCATE RepairsPerCompany, RepairsPerRoomYear;
+	INSERT INTO RepairsPerCompany(cmpID, repairs)
+	SELECT mCompany, COUNT(*)
+	FROM (SELECT mCompany FROM Repair UNION ALL SELECT mCompany FROM RepairArchive) r
+	GROUP BY mCompany;
+	INSERT INTO RepairsPerRoomYear(hotelID, roomNo, year, repairs)
+	SELECT hotelID, roomNo, CAST(EXTRACT(year FROM repairDate) AS int), COUNT(*)
+	FROM (SELECT hotelID, roomNo, repairDate FROM Repair
+		  UNION ALL SELECT hotelID, roomNo, repairDate FROM RepairArchive) r
+	GROUP BY 1, 2, 3;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT refresh_repair_rollups();